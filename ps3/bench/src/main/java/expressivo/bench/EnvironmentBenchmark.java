@@ -0,0 +1,115 @@
+package expressivo.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressivo.Environment;
+import expressivo.Expression;
+
+/**
+ * Variable lookup through an Environment compared with a HashMap&lt;String, Double&gt;, on
+ * an expression of 1024 leaves over hundreds of variables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBenchmark {
+    
+    @Param({"100", "500"})
+    public int variables;
+    
+    private String[] names;
+    private String[] internedNames;
+    private Map<String, Double> map;
+    private Environment environment;
+    private Environment mapView;
+    private Expression expression;
+    
+    @Setup
+    public void setUp() {
+        names = new String[variables];
+        internedNames = new String[variables];
+        map = new HashMap<>();
+        environment = new Environment();
+        for (int i = 0; i < variables; i++) {
+            // distinct String instances, as a parser would produce
+            names[i] = new String(ExpressionGenerator.variable(i));
+            internedNames[i] = names[i].intern();
+            map.put(ExpressionGenerator.variable(i), 1 + i / 64.0);
+            environment.set(ExpressionGenerator.variable(i), 1 + i / 64.0);
+        }
+        mapView = Environment.of(map);
+        expression = Expression.parse(new ExpressionGenerator(ExpressionGenerator.Shape.LEFT_DEEP, 5, 4, variables).text());
+    }
+    
+    /** Looks up every variable once. */
+    @Benchmark
+    public double lookupHashMap() {
+        double sum = 0;
+        for (String name : names) {
+            sum += map.get(name);
+        }
+        return sum;
+    }
+    
+    /** Looks up every variable once. */
+    @Benchmark
+    public double lookupEnvironment() {
+        double sum = 0;
+        for (String name : names) {
+            sum += environment.get(name);
+        }
+        return sum;
+    }
+    
+    /** Looks up every variable once, by names interned as the Environment's are. */
+    @Benchmark
+    public double lookupEnvironmentInterned() {
+        double sum = 0;
+        for (String name : internedNames) {
+            sum += environment.get(name);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public Expression simplifyHashMap() {
+        return expression.simplify(map);
+    }
+    
+    @Benchmark
+    public Expression simplifyEnvironment() {
+        return expression.simplify(environment);
+    }
+    
+    @Benchmark
+    public Expression simplifyMapView() {
+        return expression.simplify(mapView);
+    }
+    
+    @Benchmark
+    public double evaluateEnvironment() {
+        return expression.evaluate(environment);
+    }
+    
+    @Benchmark
+    public double evaluateMapView() {
+        return expression.evaluate(mapView);
+    }
+}
@@ -0,0 +1,100 @@
+package expressivo.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressivo.BatchEvaluator;
+import expressivo.CompiledExpression;
+import expressivo.Evaluator;
+import expressivo.Expression;
+import expressivo.ExpressionCompiler;
+
+/**
+ * Evaluating one expression with every variable bound: by substitution over the tree,
+ * by the postfix interpreter, by generated bytecode, and column-wise over many rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+    
+    private static final int ROWS = 4096;
+    
+    @Param({"LEFT_DEEP", "BALANCED"})
+    public ExpressionGenerator.Shape shape;
+    
+    @Param({"3", "5"})
+    public int depth;
+    
+    @Param({"4"})
+    public int width;
+    
+    @Param({"8"})
+    public int variables;
+    
+    private Expression expression;
+    private Map<String, Double> environment;
+    private CompiledExpression program;
+    private Evaluator evaluator;
+    private double[] values;
+    private double[] stack;
+    private double[][] columns;
+    private double[] out;
+    
+    @Setup
+    public void setUp() {
+        expression = Expression.parse(new ExpressionGenerator(shape, depth, width, variables).text());
+        program = CompiledExpression.compile(expression);
+        evaluator = ExpressionCompiler.compile(program);
+        environment = new HashMap<>();
+        values = new double[program.variables().size()];
+        columns = new double[values.length][ROWS];
+        for (int slot = 0; slot < values.length; slot++) {
+            values[slot] = 1 + slot / 8.0;
+            environment.put(program.variables().get(slot), values[slot]);
+            for (int row = 0; row < ROWS; row++) {
+                columns[slot][row] = values[slot] + row / (double) ROWS;
+            }
+        }
+        stack = new double[program.stackSize()];
+        out = new double[ROWS];
+    }
+    
+    @Benchmark
+    public Expression treeWalk() {
+        return expression.simplify(environment);
+    }
+    
+    @Benchmark
+    public double interpreted() {
+        return program.evaluate(values, stack);
+    }
+    
+    @Benchmark
+    public double compiled() {
+        return evaluator.eval(values);
+    }
+    
+    /** Evaluates ROWS rows per operation. */
+    @Benchmark
+    public double[] batchRows() {
+        BatchEvaluator.evaluate(program, columns, out);
+        return out;
+    }
+}
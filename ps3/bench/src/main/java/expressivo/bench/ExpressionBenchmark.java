@@ -0,0 +1,145 @@
+package expressivo.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressivo.Commands;
+import expressivo.Expression;
+import expressivo.ParseMode;
+import expressivo.PrintMode;
+import expressivo.Simplifier;
+
+/**
+ * Throughput of the core operations on generated expressions. Run with -prof gc to
+ * report the allocation rate and bytes allocated per operation.
+ * 
+ * <p>With the default width of 4, depth 3 gives 64 leaves and depth 8 gives 65536, about
+ * 130000 nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+    
+    @Param({"LEFT_DEEP", "BALANCED"})
+    public ExpressionGenerator.Shape shape;
+    
+    @Param({"3", "8"})
+    public int depth;
+    
+    @Param({"4"})
+    public int width;
+    
+    @Param({"1", "16"})
+    public int variables;
+    
+    private String text;
+    private Expression expression;
+    private Expression copy;
+    private Expression derivative;
+    private Map<Expression, Integer> index;
+    private Map<String, Double> environment;
+    private StringBuilder out;
+    
+    @Setup
+    public void setUp() {
+        text = new ExpressionGenerator(shape, depth, width, variables).text();
+        expression = Expression.parse(text);
+        copy = Expression.parse(text); // equal, but sharing no nodes with expression
+        derivative = expression.differentiate("a");
+        index = new HashMap<>();
+        index.put(expression, 0);
+        index.put(Expression.parse(text + " + 1"), 1);
+        environment = new HashMap<>();
+        for (int i = 0; i < variables; i += 2) {
+            environment.put(ExpressionGenerator.variable(i), 0.5 + i);
+        }
+        out = new StringBuilder(expression.toString().length());
+    }
+    
+    @Benchmark
+    public Expression parseAntlr() {
+        return Expression.parse(text, ParseMode.ANTLR);
+    }
+    
+    @Benchmark
+    public Expression parseRecursiveDescent() {
+        return Expression.parse(text, ParseMode.RECURSIVE_DESCENT);
+    }
+    
+    @Benchmark
+    public Expression parseFlattened() {
+        return Expression.parse(text, ParseMode.FLATTENED);
+    }
+    
+    @Benchmark
+    public String toStringFull() {
+        return expression.toString();
+    }
+    
+    @Benchmark
+    public String toStringMinimal() {
+        return expression.toString(PrintMode.MINIMAL_PARENTHESES);
+    }
+    
+    @Benchmark
+    public int appendToReusedBuilder() throws Exception {
+        out.setLength(0);
+        expression.appendTo(out, PrintMode.MINIMAL_PARENTHESES);
+        return out.length();
+    }
+    
+    /** Compares every node, since the copy shares none with the original. */
+    @Benchmark
+    public boolean equalsCopy() {
+        return expression.equals(copy);
+    }
+    
+    /** Hash codes are computed on construction, so this is a field read. */
+    @Benchmark
+    public int hashCodeCached() {
+        return expression.hashCode();
+    }
+    
+    @Benchmark
+    public Integer mapLookup() {
+        return index.get(copy);
+    }
+    
+    @Benchmark
+    public Expression differentiate() {
+        return expression.differentiate("a");
+    }
+    
+    @Benchmark
+    public Expression simplifyDerivative() {
+        return Simplifier.simplify(derivative);
+    }
+    
+    @Benchmark
+    public Expression simplifyExpression() {
+        return Commands.simplify(expression, environment);
+    }
+    
+    /** Parses, simplifies and prints. */
+    @Benchmark
+    public String simplifyCommand() {
+        return Commands.simplify(text, environment);
+    }
+}
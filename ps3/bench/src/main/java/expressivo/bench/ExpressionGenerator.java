@@ -0,0 +1,122 @@
+package expressivo.bench;
+
+/**
+ * Deterministic generator of expression texts for benchmarks.
+ * 
+ * <p>An expression has width^depth leaves. Its leaves are variables, drawn from a pool of
+ * a given size, except that every fifth leaf is a number, so benchmarks see both.
+ */
+public final class ExpressionGenerator {
+    
+    /**
+     * How the leaves of a generated expression are grouped.
+     */
+    public enum Shape {
+        
+        /**
+         * A sum of products of width factors each, as written without parentheses:
+         * a*b*c + d*e*f + ... It parses to one long left-nested chain of sums.
+         */
+        LEFT_DEEP,
+        
+        /**
+         * A complete tree of the given depth: each operation has width operands, and
+         * levels alternate between sums and products.
+         */
+        BALANCED
+    }
+    
+    private final Shape shape;
+    private final int depth;
+    private final int width;
+    private final int variables;
+    
+    /**
+     * Make a generator.
+     * @param shape how leaves are grouped
+     * @param depth levels of operations of a BALANCED expression, positive
+     * @param width operands of each operation, at least 2
+     * @param variables number of distinct variables, positive
+     */
+    public ExpressionGenerator(Shape shape, int depth, int width, int variables) {
+        if (depth < 1 || width < 2 || variables < 1) {
+            throw new IllegalArgumentException("depth " + depth + ", width " + width + ", variables " + variables);
+        }
+        this.shape = shape;
+        this.depth = depth;
+        this.width = width;
+        this.variables = variables;
+    }
+    
+    /**
+     * @return number of leaves of the generated expression
+     */
+    public long leaves() {
+        return (long) Math.pow(width, depth);
+    }
+    
+    /**
+     * @return the text of the expression; the same for every call
+     */
+    public String text() {
+        final StringBuilder text = new StringBuilder();
+        if (shape == Shape.LEFT_DEEP) {
+            for (long leaf = 0; leaf < leaves(); leaf++) {
+                if (leaf > 0) {
+                    text.append(leaf % width == 0 ? " + " : " * ");
+                }
+                appendLeaf(text, leaf);
+            }
+        } else {
+            appendBalanced(text, depth, 0);
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Append a complete subtree. Depth is at most about 20 for any size that fits in
+     * memory, so recursion is safe here.
+     * @return index of the next leaf
+     */
+    private long appendBalanced(StringBuilder text, int levels, long leaf) {
+        if (levels == 0) {
+            appendLeaf(text, leaf);
+            return leaf + 1;
+        }
+        final String operator = levels % 2 == 0 ? " * " : " + ";
+        text.append('(');
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                text.append(operator);
+            }
+            leaf = appendBalanced(text, levels - 1, leaf);
+        }
+        text.append(')');
+        return leaf;
+    }
+    
+    private void appendLeaf(StringBuilder text, long leaf) {
+        if (leaf % 5 == 4) {
+            text.append(leaf % 97 + 1);
+        } else {
+            appendVariable(text, (int) (leaf * 7919 % variables));
+        }
+    }
+    
+    /**
+     * @param index a variable index, nonnegative
+     * @return the name of the index-th variable: a, b, ..., z, ba, bb, ...
+     */
+    public static String variable(int index) {
+        return appendVariable(new StringBuilder(), index).toString();
+    }
+    
+    private static StringBuilder appendVariable(StringBuilder text, int index) {
+        final int start = text.length();
+        do {
+            text.insert(start, (char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return text;
+    }
+}
@@ -0,0 +1,114 @@
+package expressivo.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import expressivo.Expression;
+import expressivo.ExpressionCodec;
+import expressivo.ExpressionCorpus;
+import expressivo.ParseCache;
+import expressivo.ParseMode;
+
+/**
+ * Ways of getting expressions into memory: parsing text, hitting the parse cache,
+ * decoding the binary codec, and reading a corpus file line by line or memory-mapped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+    
+    private static final int CORPUS_LINES = 10000;
+    
+    private String text;
+    private String respaced;
+    private byte[] encoded;
+    private ParseCache cache;
+    private Path corpus;
+    
+    @Setup
+    public void setUp() throws IOException {
+        text = new ExpressionGenerator(ExpressionGenerator.Shape.BALANCED, 4, 3, 6).text();
+        respaced = text.replace(" ", "");
+        encoded = ExpressionCodec.encode(Expression.parse(text));
+        cache = new ParseCache(16);
+        cache.parse(text);
+        
+        corpus = Files.createTempFile("expressivo-corpus", ".txt");
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < CORPUS_LINES; i++) {
+            lines.add(new ExpressionGenerator(ExpressionGenerator.Shape.BALANCED, 2, 2 + i % 3, 1 + i % 5).text());
+        }
+        Files.write(corpus, lines, StandardCharsets.UTF_8);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(corpus);
+    }
+    
+    @Benchmark
+    public Expression parseAntlr() {
+        return Expression.parse(text, ParseMode.ANTLR);
+    }
+    
+    @Benchmark
+    public Expression parseRecursiveDescent() {
+        return Expression.parse(text, ParseMode.RECURSIVE_DESCENT);
+    }
+    
+    @Benchmark
+    public Expression parseCacheHit() {
+        return cache.parse(text);
+    }
+    
+    /** Hits the entry of text, after normalizing whitespace. */
+    @Benchmark
+    public Expression parseCacheHitRespaced() {
+        return cache.parse(respaced);
+    }
+    
+    @Benchmark
+    public Expression decode() {
+        return ExpressionCodec.decode(encoded);
+    }
+    
+    /** Parses all CORPUS_LINES lines. */
+    @Benchmark
+    public void corpusLines(Blackhole sink) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(corpus, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                sink.consume(Expression.parse(line, ParseMode.RECURSIVE_DESCENT));
+            }
+        }
+    }
+    
+    /** Parses all CORPUS_LINES lines. */
+    @Benchmark
+    public long corpusMapped(Blackhole sink) throws IOException {
+        return ExpressionCorpus.forEach(corpus, ParseMode.RECURSIVE_DESCENT, sink::consume);
+    }
+}
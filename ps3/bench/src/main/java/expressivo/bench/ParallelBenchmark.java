@@ -0,0 +1,95 @@
+package expressivo.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressivo.BatchCommands;
+import expressivo.Expression;
+
+/**
+ * Scaling of BatchCommands with the parallelism of its fork-join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBenchmark {
+    
+    private static final int ROWS = 1 << 20;
+    private static final int EXPRESSIONS = 1024;
+    
+    @Param({"1", "2", "4"})
+    public int parallelism;
+    
+    private ForkJoinPool pool;
+    private BatchCommands batch;
+    private Expression expression;
+    private Expression longChain;
+    private Map<String, double[]> columns;
+    private double[] out;
+    private List<String> texts;
+    private Map<String, Double> environment;
+    
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(parallelism);
+        batch = new BatchCommands(pool);
+        expression = Expression.parse(new ExpressionGenerator(ExpressionGenerator.Shape.BALANCED, 3, 4, 4).text());
+        longChain = Expression.parse(new ExpressionGenerator(ExpressionGenerator.Shape.LEFT_DEEP, 7, 4, 4).text());
+        columns = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            final double[] column = new double[ROWS];
+            for (int row = 0; row < ROWS; row++) {
+                column[row] = i + row / (double) ROWS;
+            }
+            columns.put(ExpressionGenerator.variable(i), column);
+        }
+        out = new double[ROWS];
+        texts = new ArrayList<>();
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            texts.add(new ExpressionGenerator(ExpressionGenerator.Shape.BALANCED, 2 + i % 2, 3, 1 + i % 4).text());
+        }
+        environment = new HashMap<>();
+        environment.put("b", 2.0);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+    
+    @Benchmark
+    public double[] evaluateRows() {
+        batch.evaluate(expression, columns, out);
+        return out;
+    }
+    
+    @Benchmark
+    public List<String> simplifyList() {
+        return batch.simplify(texts, environment);
+    }
+    
+    @Benchmark
+    public Expression differentiateLongChain() {
+        return batch.differentiate(longChain, "a");
+    }
+}
@@ -0,0 +1,229 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs expression commands over large workloads in parallel on a fork-join pool.
+ *
+ * <p>Lists of expressions are split into ranges processed by separate tasks, row batches
+ * are split into chunks of rows, and a single expression whose top-level Sum or Product
+ * chain is very long has the derivatives of its terms computed by separate tasks. Results
+ * are always returned in input order and are equal to what the sequential commands produce.
+ */
+public final class BatchCommands {
+
+    // below these sizes, the cost of forking a task outweighs the parallel speedup
+    private static final int EXPRESSIONS_PER_TASK = 16;
+    private static final int ROWS_PER_TASK = 1 << 15;
+    private static final int TERMS_PER_TASK = 256;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Make a batch runner that uses the common fork-join pool.
+     */
+    public BatchCommands() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Make a batch runner.
+     * @param pool pool to run tasks on; its parallelism bounds the number of cores used
+     */
+    public BatchCommands(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Apply a command to every expression of a list.
+     * @param expressions expressions to process
+     * @param command string command to apply, such as one of the Commands methods; must be thread-safe
+     * @return command's output for each expression, in input order
+     * @throws IllegalArgumentException if the command rejects any expression
+     */
+    public List<String> apply(List<String> expressions, UnaryOperator<String> command) {
+        final String[] inputs = expressions.toArray(new String[0]);
+        final String[] outputs = new String[inputs.length];
+        pool.invoke(new RangeAction(0, inputs.length, EXPRESSIONS_PER_TASK) {
+            @Override void compute(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    outputs[i] = command.apply(inputs[i]);
+                }
+            }
+        });
+        return Collections.unmodifiableList(Arrays.asList(outputs));
+    }
+
+    /**
+     * Differentiate every expression of a list, as by Commands.differentiate.
+     * @param expressions expressions to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return derivative of each expression, in input order
+     * @throws IllegalArgumentException if any expression or the variable is invalid
+     */
+    public List<String> differentiate(List<String> expressions, String variable) {
+        return apply(expressions, expression -> Commands.differentiate(expression, variable));
+    }
+
+    /**
+     * Simplify every expression of a list, as by Commands.simplify.
+     * @param expressions expressions to simplify
+     * @param environment maps variables to values, as for Commands.simplify
+     * @return simplified form of each expression, in input order
+     * @throws IllegalArgumentException if any expression is invalid
+     */
+    public List<String> simplify(List<String> expressions, Map<String, Double> environment) {
+        return apply(expressions, expression -> Commands.simplify(expression, environment));
+    }
+
+    /**
+     * Evaluate an expression for every row of a table, as by BatchEvaluator.evaluate,
+     * with ranges of rows evaluated by separate tasks.
+     * @param expression expression to evaluate
+     * @param columns maps each variable of expression to its column of values, one per row
+     * @param out receives the value of expression for row i at out[i]; its length is the number of rows
+     * @throws IllegalArgumentException if a variable of expression has no column,
+     *         or a column is shorter than out
+     */
+    public void evaluate(Expression expression, Map<String, double[]> columns, double[] out) {
+        final CompiledExpression program = CompiledExpression.compile(expression);
+        final double[][] columnsBySlot = BatchEvaluator.columnsBySlot(program, columns);
+        pool.invoke(new RangeAction(0, out.length, ROWS_PER_TASK) {
+            @Override void compute(int from, int to) {
+                BatchEvaluator.evaluate(program, columnsBySlot, out, from, to);
+            }
+        });
+    }
+
+    /**
+     * Differentiate one expression, splitting the work on long Sum or Product chains
+     * across tasks.
+     * @param expression expression to differentiate
+     * @param variable the variable to differentiate by
+     * @return expression's derivative, equal to expression.differentiate(variable)
+     */
+    public Expression differentiate(Expression expression, String variable) {
+        return pool.invoke(new RecursiveTask<Expression>() {
+            private static final long serialVersionUID = 1;
+            @Override protected Expression compute() {
+                return differentiateChain(expression, variable);
+            }
+        });
+    }
+
+    /**
+     * Differentiate an expression, in parallel if it is the root of a long chain of left-nested
+     * Sums, or of left-nested Products. Must run inside the pool.
+     */
+    private static Expression differentiateChain(Expression expression, String variable) {
+        final boolean isSum = expression instanceof Sum;
+        if (!isSum && !(expression instanceof Product)) {
+            return expression.differentiate(variable);
+        }
+
+        // chain[k] is the node combining terms 0..k+1, so chain[0] is the innermost node
+        final List<Expression> chain = new ArrayList<>();
+        for (Expression node = expression; node.getClass() == expression.getClass();
+                node = isSum ? ((Sum) node).left() : ((Product) node).left()) {
+            chain.add(node);
+        }
+        Collections.reverse(chain);
+        if (chain.size() + 1 < TERMS_PER_TASK) {
+            return expression.differentiate(variable);
+        }
+        final Expression[] terms = new Expression[chain.size() + 1];
+        terms[0] = isSum ? ((Sum) chain.get(0)).left() : ((Product) chain.get(0)).left();
+        for (int k = 0; k < chain.size(); k++) {
+            terms[k + 1] = isSum ? ((Sum) chain.get(k)).right() : ((Product) chain.get(k)).right();
+        }
+
+        final Expression[] derivatives = new Expression[terms.length];
+        new RangeAction(0, terms.length, TERMS_PER_TASK) {
+            @Override void compute(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    derivatives[i] = differentiateChain(terms[i], variable);
+                }
+            }
+        }.invoke();
+
+        // reassemble exactly as Sum.differentiate and Product.differentiate would
+        Expression derivative = derivatives[0];
+        for (int k = 0; k < chain.size(); k++) {
+            final Expression term = terms[k + 1];
+            final Expression termDerivative = derivatives[k + 1];
+            if (isSum) {
+                derivative = new Sum(derivative, termDerivative);
+            } else {
+                final Expression prefix = k == 0 ? terms[0] : chain.get(k - 1);
+                derivative = new Sum(new Product(derivative, term), new Product(prefix, termDerivative));
+            }
+        }
+        return derivative;
+    }
+
+    /**
+     * Fork-join action over a range of indices, split in halves down to a threshold size.
+     */
+    private abstract static class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        RangeAction(int from, int to, int threshold) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Process a range sequentially.
+         * @param from first index of the range
+         * @param to one past the last index of the range
+         */
+        abstract void compute(int from, int to);
+
+        @Override protected final void compute() {
+            if (to - from <= threshold) {
+                compute(from, to);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new Half(whole(), from, middle), new Half(whole(), middle, to));
+        }
+
+        /** @return the action whose compute(from, to) processes this range */
+        RangeAction whole() {
+            return this;
+        }
+
+        /**
+         * A subrange of another action, processed by the same compute(from, to).
+         */
+        private static final class Half extends RangeAction {
+            private static final long serialVersionUID = 1;
+            private final RangeAction whole;
+
+            Half(RangeAction whole, int from, int to) {
+                super(from, to, whole.threshold);
+                this.whole = whole;
+            }
+
+            @Override void compute(int from, int to) {
+                whole.compute(from, to);
+            }
+
+            @Override RangeAction whole() {
+                return whole;
+            }
+        }
+    }
+}
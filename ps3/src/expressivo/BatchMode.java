@@ -0,0 +1,156 @@
+package expressivo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-interactive console: runs every line of an input as a console Session would, and
+ * writes the outputs in input order, without prompts.
+ * 
+ * <p>Work flows through three stages connected by a bounded queue. A reader thread cuts
+ * the input into segments of about LINES_PER_SEGMENT lines, worker threads run segments
+ * in parallel, and the calling thread writes finished segments in order. A segment is
+ * only ever cut just before an expression line, which replaces the current expression,
+ * so segments rarely depend on each other; when one does, because its first expression
+ * is invalid, it waits for the previous segment's final expression before continuing.
+ */
+final class BatchMode {
+    
+    static final int BUFFER_SIZE = 1 << 16;
+    private static final int LINES_PER_SEGMENT = 1024;
+    private static final int SEGMENTS_PER_WORKER = 4;
+    
+    private static final CompletableFuture<Segment> END = CompletableFuture.completedFuture(null);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    
+    private BatchMode() {
+        // static utility, not instantiable
+    }
+    
+    /**
+     * Run every line of an input, up to its end or its first empty line.
+     * @param in input lines, each an expression or a console command
+     * @param out receives the output of each line, one line each, in input order;
+     *        not flushed or closed
+     * @param workers number of worker threads, positive
+     * @throws IOException if reading in or writing out fails
+     */
+    static void run(BufferedReader in, Writer out, int workers) throws IOException {
+        final ExecutorService pool = Executors.newFixedThreadPool(workers, BatchMode::daemon);
+        final BlockingQueue<CompletableFuture<Segment>> pending = new ArrayBlockingQueue<>(SEGMENTS_PER_WORKER * workers);
+        final Thread reader = daemon(() -> read(in, pool, pending));
+        reader.start();
+        try {
+            while (true) {
+                final CompletableFuture<Segment> next = pending.take();
+                if (next == END) {
+                    return;
+                }
+                out.write(next.join().output);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", ie);
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ce.getCause()).getCause();
+            }
+            throw ce;
+        } finally {
+            reader.interrupt();
+            pool.shutdownNow();
+        }
+    }
+    
+    private static Thread daemon(Runnable task) {
+        final Thread thread = new Thread(task, "expressivo-batch-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+    
+    /**
+     * Reader stage: cut the input into segments and submit them in order.
+     */
+    private static void read(BufferedReader in, ExecutorService pool, BlockingQueue<CompletableFuture<Segment>> pending) {
+        try {
+            CompletableFuture<Segment> previous = CompletableFuture.completedFuture(new Segment("", Optional.empty()));
+            List<String> lines = new ArrayList<>(LINES_PER_SEGMENT);
+            try {
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty()) {
+                    if (lines.size() >= LINES_PER_SEGMENT && !Session.isCommand(line)) {
+                        previous = submit(lines, previous, pool);
+                        pending.put(previous);
+                        lines = new ArrayList<>(LINES_PER_SEGMENT);
+                    }
+                    lines.add(line);
+                }
+            } catch (IOException ioe) {
+                final CompletableFuture<Segment> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new UncheckedIOException(ioe));
+                pending.put(failed);
+                return;
+            }
+            if (!lines.isEmpty()) {
+                pending.put(submit(lines, previous, pool));
+            }
+            pending.put(END);
+        } catch (InterruptedException ie) {
+            // the writer stopped early; nothing more to do
+        }
+    }
+    
+    private static CompletableFuture<Segment> submit(List<String> lines, CompletableFuture<Segment> previous, ExecutorService pool) {
+        return CompletableFuture.supplyAsync(() -> run(lines, previous), pool);
+    }
+    
+    /**
+     * Worker stage: run the lines of one segment.
+     * @param lines lines of the segment
+     * @param previous the previous segment, whose final expression is needed only if a
+     *        command runs before any expression of this segment is valid
+     * @return the outputs and final expression of the segment
+     */
+    private static Segment run(List<String> lines, CompletableFuture<Segment> previous) {
+        final StringBuilder output = new StringBuilder();
+        Session session = new Session();
+        boolean continued = false;
+        for (String line : lines) {
+            if (!continued && Session.isCommand(line) && !session.currentExpression().isPresent()) {
+                session = new Session(previous.join().finalExpression);
+                continued = true;
+            }
+            output.append(session.run(line)).append(System.lineSeparator());
+        }
+        if (!continued && !session.currentExpression().isPresent()) {
+            // no valid expression here, so the previous segment's expression carries over
+            return new Segment(output.toString(), previous.join().finalExpression);
+        }
+        return new Segment(output.toString(), session.currentExpression());
+    }
+    
+    /**
+     * The outputs of a run of lines, and the current expression after them.
+     */
+    private static final class Segment {
+        final String output;
+        final Optional<Expression> finalExpression;
+        
+        Segment(String output, Optional<Expression> finalExpression) {
+            this.output = output;
+            this.finalExpression = finalExpression;
+        }
+    }
+}
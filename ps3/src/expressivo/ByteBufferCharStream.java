@@ -0,0 +1,151 @@
+package expressivo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * Mutable view of a range of an ASCII-encoded byte buffer as characters, usable both as
+ * an ANTLR CharStream and as a CharSequence, without decoding it to a String.
+ * 
+ * <p>Each byte is one character. The grammar of Expression.g4 is pure ASCII, so a byte
+ * outside ASCII is never part of a valid expression; it reads as the Latin-1 character
+ * with the same code, which the lexer rejects like any other invalid character.
+ * 
+ * <p>One view can be moved from range to range with {@link #reset}, so that scanning a
+ * whole buffer allocates nothing per range. On reset, the range is bulk-copied into a
+ * byte array owned by the view and reused for every range: reading a memory-mapped
+ * buffer one byte at a time costs several times more than reading an array, and the
+ * lexer and parser read every byte at least once.
+ */
+final class ByteBufferCharStream implements CharStream, CharSequence {
+    
+    private final String sourceName;
+    private ByteBuffer source = null; // a duplicate of the last buffer viewed, or null
+    private ByteBuffer viewed = null; // the last buffer viewed, or null
+    private byte[] bytes = new byte[64]; // bytes[0..length) are the characters of the range
+    private int length = 0;
+    private int position = 0; // index of the next character
+    
+    /**
+     * Make a view of an empty range.
+     * @param sourceName name of the source of the bytes, for error messages
+     */
+    ByteBufferCharStream(String sourceName) {
+        this.sourceName = sourceName;
+    }
+    
+    /**
+     * Make a view of a range of a buffer.
+     * @param buffer bytes to view; its position and limit are ignored and never changed
+     * @param start index in buffer of the first byte of the range
+     * @param end index in buffer one past the last byte of the range
+     */
+    ByteBufferCharStream(ByteBuffer buffer, int start, int end) {
+        this(IntStream.UNKNOWN_SOURCE_NAME);
+        reset(buffer, start, end);
+    }
+    
+    /**
+     * View another range, and move to its first character.
+     * @param buffer bytes to view; its position and limit are ignored and never changed
+     * @param start index in buffer of the first byte of the range
+     * @param end index in buffer one past the last byte of the range
+     */
+    void reset(ByteBuffer buffer, int start, int end) {
+        if (buffer != viewed) {
+            viewed = buffer;
+            source = buffer.duplicate();
+        }
+        length = end - start;
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+        }
+        source.clear();
+        source.position(start);
+        source.limit(end);
+        source.get(bytes, 0, length);
+        position = 0;
+    }
+    
+    // CharSequence
+    
+    @Override public int length() {
+        return length;
+    }
+    
+    @Override public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return (char) (bytes[index] & 0xFF);
+    }
+    
+    @Override public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("range " + from + ".." + to + ", length " + length);
+        }
+        return text(from, to); // a copy, since this view moves on reset
+    }
+    
+    @Override public String toString() {
+        return text(0, length);
+    }
+    
+    // CharStream
+    
+    @Override public void consume() {
+        if (position >= length) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        position++;
+    }
+    
+    @Override public int LA(int i) {
+        if (i == 0) {
+            return 0; // undefined
+        }
+        final int index = i > 0 ? position + i - 1 : position + i;
+        if (index < 0 || index >= length) {
+            return IntStream.EOF;
+        }
+        return bytes[index] & 0xFF;
+    }
+    
+    @Override public int mark() {
+        return -1; // the whole range stays available, so marks need no bookkeeping
+    }
+    
+    @Override public void release(int marker) {
+        // nothing to release
+    }
+    
+    @Override public int index() {
+        return position;
+    }
+    
+    @Override public void seek(int index) {
+        position = Math.min(Math.max(index, 0), length);
+    }
+    
+    @Override public int size() {
+        return length;
+    }
+    
+    @Override public String getSourceName() {
+        return sourceName;
+    }
+    
+    @Override public String getText(Interval interval) {
+        final int from = Math.max(interval.a, 0);
+        final int to = Math.min(interval.b + 1, length);
+        return from >= to ? "" : text(from, to);
+    }
+    
+    private String text(int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,75 @@
+package expressivo;
+
+/**
+ * Immutable snapshot of the counters of a cache.
+ * 
+ * Abstraction Function (AF):
+ *   AF(hits, misses, evictions) = the performance of a cache that answered hits lookups
+ *     from stored entries, computed misses results, and discarded evictions entries to
+ *     stay within its bounds
+ * 
+ * Representation Invariant (RI):
+ *   hits, misses, evictions >= 0
+ * 
+ * Safety from rep exposure:
+ *   All fields are private, final and primitive.
+ */
+public final class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    
+    private void checkRep() {
+        assert hits >= 0 && misses >= 0 && evictions >= 0 : "Counters must be nonnegative";
+    }
+    
+    /**
+     * @param hits number of lookups answered from the cache, nonnegative
+     * @param misses number of lookups that had to compute their result, nonnegative
+     * @param evictions number of entries discarded to respect the cache's bounds, nonnegative
+     */
+    CacheStats(long hits, long misses, long evictions) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        checkRep();
+    }
+    
+    /** @return number of lookups answered from the cache */
+    public long hitCount() {
+        return hits;
+    }
+    
+    /** @return number of lookups that had to compute their result */
+    public long missCount() {
+        return misses;
+    }
+    
+    /** @return number of entries discarded to respect the cache's bounds */
+    public long evictionCount() {
+        return evictions;
+    }
+    
+    /** @return fraction of lookups answered from the cache, or 1 if there were none */
+    public double hitRate() {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 1 : (double) hits / lookups;
+    }
+    
+    @Override
+    public String toString() {
+        return "hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+    }
+    
+    @Override
+    public boolean equals(Object thatObject) {
+        if (!(thatObject instanceof CacheStats)) return false;
+        CacheStats that = (CacheStats) thatObject;
+        return hits == that.hits && misses == that.misses && evictions == that.evictions;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hits) * 31 * 31 + Long.hashCode(misses) * 31 + Long.hashCode(evictions);
+    }
+}
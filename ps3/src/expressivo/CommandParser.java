@@ -0,0 +1,209 @@
+package expressivo;
+
+/**
+ * Single-pass parser for the command lines of the console.
+ *
+ * <p>A command line is one of:
+ * <pre>
+ *   !d/d VARIABLE ' '*
+ *   !simplify (' '+ VARIABLE ' '* '=' ' '* VALUE)* ' '*
+ *   !eval (' '+ VARIABLE ' '* '=' ' '* VALUE)* ' '*
+ *   !print ' '*
+ * </pre>
+ * where VARIABLE is a nonempty string of letters and VALUE is a nonempty string of
+ * non-space characters accepted by Double.parseDouble whose value is finite and
+ * nonnegative, as an expression's numbers are. Any other line is an expression.
+ *
+ * <p>A parser is reusable and not thread-safe: the assignments of a command are written
+ * into one Environment owned by the parser, cleared by each parse, so parsing a stream of
+ * commands over the same variables allocates only the variable name of each !d/d.
+ */
+final class CommandParser {
+
+    /**
+     * What a line of console input asks for.
+     */
+    enum Kind {
+        /** a new current expression */
+        EXPRESSION,
+        /** !d/d: differentiate the current expression, which the derivative replaces */
+        DIFFERENTIATE,
+        /** !simplify: print the current expression simplified under the assignments */
+        SIMPLIFY,
+        /** !eval: print the value of the current expression under the assignments */
+        EVALUATE,
+        /** !print: print the current expression with minimal parentheses */
+        PRINT
+    }
+
+    private static final String DIFFERENTIATE_PREFIX = "!d/d";
+    private static final String SIMPLIFY_PREFIX = "!simplify";
+    private static final String EVALUATE_PREFIX = "!eval";
+    private static final String PRINT_PREFIX = "!print";
+
+    private static final String DIFFERENTIATE_USAGE = "usage: !d/d must be followed by a variable name";
+    private static final String SIMPLIFY_USAGE = "usage: !simplify var1=val1 var2=val2 ...";
+    private static final String EVALUATE_USAGE = "usage: !eval var1=val1 var2=val2 ...";
+    private static final String PRINT_USAGE = "usage: !print";
+
+    // decimal numbers with at most this many digits are exact as longs and as doubles
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+    };
+
+    private final Environment assignments = new Environment();
+    private String variable;
+
+    /**
+     * @param input a line of console input
+     * @return the kind of input, judged by its prefix only
+     */
+    static Kind kind(String input) {
+        if (!input.startsWith("!")) {
+            return Kind.EXPRESSION;
+        } else if (input.startsWith(DIFFERENTIATE_PREFIX)) {
+            return Kind.DIFFERENTIATE;
+        } else if (input.startsWith(SIMPLIFY_PREFIX)) {
+            return Kind.SIMPLIFY;
+        } else if (input.startsWith(EVALUATE_PREFIX)) {
+            return Kind.EVALUATE;
+        } else if (input.startsWith(PRINT_PREFIX)) {
+            return Kind.PRINT;
+        }
+        return Kind.EXPRESSION;
+    }
+
+    /**
+     * Parse a line of console input. After a DIFFERENTIATE line, variable() is its
+     * variable; after a SIMPLIFY or EVALUATE line, assignments() holds its assignments.
+     * @param input a line of console input
+     * @return the kind of input
+     * @throws Main.CommandSyntaxException if input has a command prefix but is malformed,
+     *         or assigns a value that is negative, NaN or infinite
+     * @throws NumberFormatException if an assigned value is not a number
+     */
+    Kind parse(String input) {
+        final Kind kind = kind(input);
+        switch (kind) {
+        case DIFFERENTIATE:
+            variable = parseDifferentiate(input);
+            break;
+        case SIMPLIFY:
+            parseAssignments(input, SIMPLIFY_PREFIX.length(), SIMPLIFY_USAGE);
+            break;
+        case EVALUATE:
+            parseAssignments(input, EVALUATE_PREFIX.length(), EVALUATE_USAGE);
+            break;
+        case PRINT:
+            if (skipSpaces(input, PRINT_PREFIX.length()) != input.length()) {
+                throw new Main.CommandSyntaxException(PRINT_USAGE);
+            }
+            break;
+        default:
+            break;
+        }
+        return kind;
+    }
+
+    /**
+     * @return the variable of the last DIFFERENTIATE line parsed
+     */
+    String variable() {
+        return variable;
+    }
+
+    /**
+     * @return the assignments of the last SIMPLIFY or EVALUATE line parsed; owned by this
+     *         parser, and overwritten by the next parse
+     */
+    Environment assignments() {
+        return assignments;
+    }
+
+    private static String parseDifferentiate(String input) {
+        final int start = DIFFERENTIATE_PREFIX.length();
+        final int end = skipLetters(input, start);
+        if (end == start || skipSpaces(input, end) != input.length()) {
+            throw new Main.CommandSyntaxException(DIFFERENTIATE_USAGE);
+        }
+        return input.substring(start, end);
+    }
+
+    private void parseAssignments(String input, int i, String usage) {
+        assignments.clear();
+        final int length = input.length();
+        while (true) {
+            final int nameStart = skipSpaces(input, i);
+            if (nameStart == length) {
+                return;
+            } else if (nameStart == i) {
+                throw new Main.CommandSyntaxException(usage);
+            }
+            final int nameEnd = skipLetters(input, nameStart);
+            final int equals = skipSpaces(input, nameEnd);
+            if (nameEnd == nameStart || equals == length || input.charAt(equals) != '=') {
+                throw new Main.CommandSyntaxException(usage);
+            }
+            final int valueStart = skipSpaces(input, equals + 1);
+            int valueEnd = valueStart;
+            while (valueEnd < length && input.charAt(valueEnd) != ' ') {
+                valueEnd++;
+            }
+            if (valueEnd == valueStart) {
+                throw new Main.CommandSyntaxException(usage);
+            }
+            final double value = parseValue(input, valueStart, valueEnd);
+            if (!(value >= 0 && value < Double.POSITIVE_INFINITY)) {
+                throw new Main.CommandSyntaxException(usage);
+            }
+            assignments.set(input, nameStart, nameEnd, value);
+            i = valueEnd;
+        }
+    }
+
+    /**
+     * Parse a number as Double.parseDouble does. Short plain decimals such as 2 or 0.5 are
+     * converted directly: both the digits as an integer and the power of ten are exact
+     * doubles, so one division gives the correctly rounded value. Anything else is passed
+     * to Double.parseDouble.
+     * @throws NumberFormatException if text[start..end) is not a number
+     */
+    static double parseValue(String text, int start, int end) {
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9' && digitCount < MAX_EXACT_DIGITS) {
+                digits = 10 * digits + (c - '0');
+                digitCount++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return Double.parseDouble(text.substring(start, end));
+            }
+        }
+        if (digitCount == 0) {
+            return Double.parseDouble(text.substring(start, end));
+        }
+        return fractionDigits <= 0 ? digits : digits / POWERS_OF_TEN[fractionDigits];
+    }
+
+    private static int skipSpaces(String input, int i) {
+        while (i < input.length() && input.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipLetters(String input, int i) {
+        while (i < input.length() && Environment.isLetter(input.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
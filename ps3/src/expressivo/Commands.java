@@ -21,16 +21,33 @@ public class Commands {
      * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters.
      * @return expression's derivative with respect to variable.  Must be a valid expression equal
      *         to the derivative, but doesn't need to be in simplest or canonical form.
+     *         The derivative is reduced by Simplifier, so repeated differentiation stays small;
+     *         derivatives are kept in DerivativeCache.shared(), so repeating a request is cheap.
+     *         The derivative is printed with minimal parentheses.
      * @throws IllegalArgumentException if the expression or variable is invalid
      */
 	 public static String differentiate(String expression, String variable) {
-	        if (!variable.matches("[A-Za-z]+")) {
-	            throw new IllegalArgumentException();
-	        }
-	        
-	        return Expression.parse(expression).differentiate(variable).toString();
+	        return differentiate(Expression.parse(expression), variable).toString(PrintMode.MINIMAL_PARENTHESES);
 	    }
     
+    /**
+     * Differentiate an expression with respect to a variable, without printing or parsing.
+     * @param expression the expression to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters.
+     * @return expression's derivative with respect to variable, reduced by Simplifier;
+     *         differentiate(String, String) prints exactly this expression
+     * @throws IllegalArgumentException if the variable is invalid
+     */
+    public static Expression differentiate(Expression expression, String variable) {
+        if (!SymbolTable.isName(variable)) {
+            throw new IllegalArgumentException();
+        }
+        if (Derivative.of(expression, variable).isZero()) {
+            return Number.of(0); // what Simplifier reduces a derivative with a zero factor in every term to
+        }
+        return DerivativeCache.shared().simplifiedDerivative(expression, variable);
+    }
+    
     /**
      * Simplify an expression.
      * @param expression the expression to simplify
@@ -41,10 +58,32 @@ public class Commands {
      *         the expression and the environment with its value, environment.get(v).  If there are no
      *         variables left in this expression after substitution, it must be evaluated to a single number.
      *         Additional simplifications to the expression may be done at the implementor's discretion.
+     *         The result is printed with minimal parentheses.
      * @throws IllegalArgumentException if the expression is invalid
      */
     public static String simplify(String expression, Map<String,Double> environment) {
-        throw new RuntimeException("unimplemented");
+        return simplify(Expression.parse(expression), environment).toString(PrintMode.MINIMAL_PARENTHESES);
+    }
+    
+    /**
+     * Simplify an expression, without printing or parsing.
+     * @param expression the expression to simplify
+     * @param environment maps variables to values, as for simplify(String, Map)
+     * @return expression after substitution and simplification as by simplify(String, Map),
+     *         which prints exactly this expression
+     */
+    public static Expression simplify(Expression expression, Map<String,Double> environment) {
+        return simplify(expression, Environment.of(environment));
+    }
+    
+    /**
+     * Simplify an expression, without printing, parsing or boxing.
+     * @param expression the expression to simplify
+     * @param environment assigns values to variables, as for simplify(String, Map)
+     * @return expression after substitution and simplification as by simplify(String, Map)
+     */
+    public static Expression simplify(Expression expression, Environment environment) {
+        return expression.simplify(environment);
     }
     
 }
@@ -0,0 +1,313 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable expression flattened into postfix instructions for fast repeated evaluation.
+ *
+ * <p>Compilation assigns every distinct variable of the expression a slot index. An
+ * environment is then a double[] indexed by slot, and evaluation is a single loop over
+ * the instruction array with no recursion, no map lookups and no boxing. Use
+ * {@link #evaluate(double[], double[])} with a reused stack to evaluate without allocating.
+ *
+ * Abstraction Function (AF):
+ *   AF(code, constants, variables) = the expression whose postfix form is code, where an
+ *     instruction (i << 2 | CONSTANT) pushes constants[i], (i << 2 | LOAD) pushes the value of
+ *     variables[i], ADD pops two values and pushes their sum, MULTIPLY their product
+ *
+ * Representation Invariant (RI):
+ *   code is a valid postfix program leaving exactly one value on the stack, and the
+ *     stack never holds more than stackSize values
+ *   variables are distinct
+ *
+ * Safety from rep exposure:
+ *   All fields are private and final, arrays are never returned, and variables()
+ *   returns an unmodifiable copy.
+ */
+public final class CompiledExpression {
+
+    private static final int CONSTANT = 0;
+    private static final int LOAD = 1;
+    private static final int ADD = 2;
+    private static final int MULTIPLY = 3;
+    private static final int OPCODE_BITS = 2;
+    private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+
+    private final int[] code;
+    private final double[] constants;
+    private final String[] variables;
+    private final int stackSize;
+
+    private void checkRep() {
+        assert code.length > 0 : "Program must not be empty";
+        assert stackSize >= 1 : "Program must push a result";
+        assert variables.length == new HashSet<>(Arrays.asList(variables)).size()
+                : "Variables must be distinct";
+    }
+
+    private CompiledExpression(int[] code, double[] constants, String[] variables, int stackSize) {
+        this.code = code;
+        this.constants = constants;
+        this.variables = variables;
+        this.stackSize = stackSize;
+        checkRep();
+    }
+
+    /**
+     * Compile an expression.
+     * @param expression expression to compile
+     * @return compiled form of expression, whose slots are numbered in order of
+     *         first appearance of each variable in expression, left to right
+     */
+    public static CompiledExpression compile(Expression expression) {
+        final Compiler compiler = new Compiler();
+        compiler.emit(expression);
+        return new CompiledExpression(
+                Arrays.copyOf(compiler.code, compiler.codeLength),
+                Arrays.copyOf(compiler.constants, compiler.constantsLength),
+                compiler.variables.toArray(new String[0]),
+                compiler.maxDepth);
+    }
+
+    /**
+     * @return the variables of the expression, indexed by slot
+     */
+    public List<String> variables() {
+        return Collections.unmodifiableList(Arrays.asList(variables.clone()));
+    }
+
+    /**
+     * @param variable a variable name
+     * @return the slot of variable, or -1 if the expression does not contain it
+     */
+    public int slotOf(String variable) {
+        for (int slot = 0; slot < variables.length; slot++) {
+            if (variables[slot].equals(variable)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the length of the stack array required by evaluate(double[], double[])
+     */
+    public int stackSize() {
+        return stackSize;
+    }
+
+    /**
+     * Evaluate the expression.
+     * @param values value of each variable, indexed by slot; length at least variables().size()
+     * @return value of the expression with every variable replaced by its value
+     */
+    public double evaluate(double[] values) {
+        return evaluate(values, new double[stackSize]);
+    }
+
+    /**
+     * Evaluate the expression without allocating.
+     * @param values value of each variable, indexed by slot; length at least variables().size()
+     * @param stack scratch space of length at least stackSize(), overwritten by this call;
+     *        may be reused across calls, but not shared between concurrent calls
+     * @return value of the expression with every variable replaced by its value
+     */
+    public double evaluate(double[] values, double[] stack) {
+        int top = -1;
+        for (final int instruction : code) {
+            final int operand = instruction >>> OPCODE_BITS;
+            switch (instruction & OPCODE_MASK) {
+            case CONSTANT:
+                stack[++top] = constants[operand];
+                break;
+            case LOAD:
+                stack[++top] = values[operand];
+                break;
+            case ADD:
+                top--;
+                stack[top] += stack[top + 1];
+                break;
+            default: // MULTIPLY
+                top--;
+                stack[top] *= stack[top + 1];
+                break;
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Evaluate the expression.
+     * @param environment maps variables to values, and must contain every variable of the expression
+     * @return value of the expression with every variable replaced by its value in environment
+     * @throws IllegalArgumentException if environment is missing a variable of the expression
+     */
+    public double evaluate(Map<String, Double> environment) {
+        final double[] values = new double[variables.length];
+        for (int slot = 0; slot < variables.length; slot++) {
+            final Double value = environment.get(variables[slot]);
+            if (value == null) {
+                throw new IllegalArgumentException("no value for variable " + variables[slot]);
+            }
+            values[slot] = value;
+        }
+        return evaluate(values);
+    }
+
+    /**
+     * Evaluate the expression.
+     * @param environment assigns a value to every variable of the expression
+     * @return value of the expression with every variable replaced by its value in environment
+     * @throws IllegalArgumentException if environment is missing a variable of the expression
+     */
+    public double evaluate(Environment environment) {
+        final double[] values = new double[variables.length];
+        for (int slot = 0; slot < variables.length; slot++) {
+            values[slot] = environment.require(variables[slot]);
+        }
+        return evaluate(values);
+    }
+
+    /**
+     * Receives the instructions of a compiled expression in program order.
+     */
+    interface InstructionVisitor {
+        /** @param value constant to push */
+        void constant(double value);
+        /** @param slot slot whose value to push */
+        void load(int slot);
+        /** pop two values and push their sum */
+        void add();
+        /** pop two values and push their product */
+        void multiply();
+    }
+
+    /**
+     * Feed the program to a visitor, one instruction at a time.
+     * @param visitor receives every instruction in order
+     */
+    void replay(InstructionVisitor visitor) {
+        for (final int instruction : code) {
+            final int operand = instruction >>> OPCODE_BITS;
+            switch (instruction & OPCODE_MASK) {
+            case CONSTANT:
+                visitor.constant(constants[operand]);
+                break;
+            case LOAD:
+                visitor.load(operand);
+                break;
+            case ADD:
+                visitor.add();
+                break;
+            default: // MULTIPLY
+                visitor.multiply();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Accumulates the postfix program while walking the expression.
+     */
+    private static final class Compiler {
+        private static final Object ADD_MARKER = new Object();
+        private static final Object MULTIPLY_MARKER = new Object();
+
+        private int[] code = new int[16];
+        private int codeLength = 0;
+        private double[] constants = new double[4];
+        private int constantsLength = 0;
+        private final List<String> variables = new ArrayList<>();
+        private final Map<String, Integer> slots = new HashMap<>();
+        private int depth = 0;
+        private int maxDepth = 0;
+
+        /**
+         * Append the program for expression. Walks the tree with an explicit work stack,
+         * so arbitrarily deep expressions compile without recursion.
+         * @param expression expression to compile
+         */
+        void emit(Expression expression) {
+            final Deque<Object> work = new ArrayDeque<>();
+            work.push(expression);
+            while (!work.isEmpty()) {
+                final Object next = work.pop();
+                if (next == ADD_MARKER) {
+                    append(ADD, 0);
+                } else if (next == MULTIPLY_MARKER) {
+                    append(MULTIPLY, 0);
+                } else if (next instanceof Sum) {
+                    final Sum sum = (Sum) next;
+                    work.push(ADD_MARKER);
+                    work.push(sum.right());
+                    work.push(sum.left());
+                } else if (next instanceof Product) {
+                    final Product product = (Product) next;
+                    work.push(MULTIPLY_MARKER);
+                    work.push(product.right());
+                    work.push(product.left());
+                } else if (next instanceof NarySum) {
+                    // t0 t1 ADD t2 ADD ... [constant ADD]
+                    final NarySum sum = (NarySum) next;
+                    if (sum.constant() != 0) {
+                        work.push(ADD_MARKER);
+                        work.push(Number.of(sum.constant()));
+                    }
+                    for (int i = sum.termCount() - 1; i >= 0; i--) {
+                        if (i > 0) {
+                            work.push(ADD_MARKER);
+                        }
+                        work.push(sum.term(i));
+                    }
+                } else if (next instanceof NaryProduct) {
+                    // f0 f1 MULTIPLY f2 MULTIPLY ... [coefficient MULTIPLY]
+                    final NaryProduct product = (NaryProduct) next;
+                    if (product.coefficient() != 1) {
+                        work.push(MULTIPLY_MARKER);
+                        work.push(Number.of(product.coefficient()));
+                    }
+                    for (int i = product.factorCount() - 1; i >= 0; i--) {
+                        if (i > 0) {
+                            work.push(MULTIPLY_MARKER);
+                        }
+                        work.push(product.factor(i));
+                    }
+                } else if (next instanceof Number) {
+                    if (constantsLength == constants.length) {
+                        constants = Arrays.copyOf(constants, 2 * constantsLength);
+                    }
+                    constants[constantsLength] = ((Number) next).value();
+                    append(CONSTANT, constantsLength++);
+                } else if (next instanceof Variable) {
+                    final String name = ((Variable) next).name();
+                    Integer slot = slots.get(name);
+                    if (slot == null) {
+                        slot = variables.size();
+                        slots.put(name, slot);
+                        variables.add(name);
+                    }
+                    append(LOAD, slot);
+                } else {
+                    throw new IllegalArgumentException("cannot compile " + next.getClass().getName());
+                }
+            }
+        }
+
+        private void append(int opcode, int operand) {
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, 2 * codeLength);
+            }
+            code[codeLength++] = operand << OPCODE_BITS | opcode;
+            depth += opcode == CONSTANT || opcode == LOAD ? 1 : -1;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+    }
+}
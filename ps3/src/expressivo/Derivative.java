@@ -0,0 +1,109 @@
+package expressivo;
+
+/**
+ * The derivative of an expression with respect to a variable, expanded into an expression
+ * tree only when something needs the tree.
+ * 
+ * <p>Making a Derivative costs O(1). Asking whether it is zero costs one bit test of the
+ * expression's variable mask (see SymbolTable.mask). Evaluating it walks the expression once
+ * with the product rule applied to values, as forward-mode automatic differentiation does,
+ * and never builds the derivative; subexpressions that do not contain the variable are only
+ * evaluated, not differentiated. The tree that expression.differentiate(variable) would
+ * return is built by expression(), at most once, and only toString and simplify need it.
+ * 
+ * Abstraction Function (AF):
+ *   AF(expression, variable, expanded) = the derivative of expression with respect to the
+ *     variable named SymbolTable.name(variable), or with respect to a variable that appears
+ *     in no expression if variable == -1
+ * 
+ * Representation Invariant (RI):
+ *   variable == SymbolTable.lookup(name)
+ *   expanded is null, or is structurally equal to expression.differentiate(name)
+ * 
+ * Safety from rep exposure:
+ *   All fields are private; expression and expanded are immutable. expanded is computed
+ *   at most once per thread that races on it, and every computation gives an equal tree,
+ *   so publishing it through a volatile field needs no lock.
+ */
+public final class Derivative {
+    
+    private final Expression expression;
+    private final String name;
+    private final int variable;
+    private volatile Expression expanded;
+    
+    private void checkRep() {
+        assert expression != null : "Expression must not be null";
+        assert variable == SymbolTable.lookup(name) : "Variable id must match its name";
+    }
+    
+    private Derivative(Expression expression, String name) {
+        this.expression = expression;
+        this.name = name;
+        this.variable = SymbolTable.lookup(name);
+        checkRep();
+    }
+    
+    /**
+     * @param expression expression to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return the unexpanded derivative of expression with respect to variable
+     * @throws IllegalArgumentException if variable is not a nonempty string of letters
+     */
+    public static Derivative of(Expression expression, String variable) {
+        if (!SymbolTable.isName(variable)) {
+            throw new IllegalArgumentException("not a variable name: " + variable);
+        }
+        return new Derivative(expression, variable);
+    }
+    
+    /**
+     * Decide in O(1), without expanding, whether the derivative is known to be zero.
+     * @return true if expression does not contain the variable, so that every term of the
+     *         derivative has a zero factor; false if expression may contain the variable
+     */
+    public boolean isZero() {
+        return !SymbolTable.mayContain(expression, variable);
+    }
+    
+    /**
+     * Evaluate the derivative without expanding it.
+     * @param environment has a value for every variable of the expression
+     * @return value of the derivative with every variable replaced by its value in
+     *         environment; for an expression of binary Sums and Products with finite values,
+     *         exactly expression().evaluate(environment), and otherwise equal up to rounding
+     * @throws IllegalArgumentException if environment is missing a variable of the expression
+     */
+    public double evaluate(Environment environment) {
+        return ExpressionWalker.evaluateDerivative(expression, variable, environment);
+    }
+    
+    /**
+     * @return the derivative as an expression, structurally equal to
+     *         expression.differentiate(variable); expanded on the first call only
+     */
+    public Expression expression() {
+        Expression tree = expanded;
+        if (tree == null) {
+            tree = expression.differentiate(name);
+            expanded = tree;
+        }
+        return tree;
+    }
+    
+    /**
+     * @param environment assigns values to some variables, as for Expression.simplify
+     * @return expression().simplify(environment)
+     */
+    public Expression simplify(Environment environment) {
+        return expression().simplify(environment);
+    }
+    
+    /**
+     * @return expression().toString()
+     */
+    @Override
+    public String toString() {
+        return expression().toString();
+    }
+}
@@ -0,0 +1,127 @@
+package expressivo;
+
+/**
+ * Bounded, thread-safe cache of derivatives, keyed on an expression and a variable.
+ * 
+ * <p>Derivatives are computed with {@link ExpressionFactory#differentiate}, so within one
+ * derivative each distinct subexpression is differentiated only once, and derivatives
+ * share nodes with the expressions they were computed from. Derivatives reduced by
+ * Simplifier are kept too, as separate entries, so a repeated command skips both steps.
+ * 
+ * <p>The cache is bounded both in entries and in the total number of nodes it holds, and
+ * evicts the least-recently-used entries first. The nodes of an entry are those of its
+ * result plus those of the expression it is keyed on, which the cache retains as well;
+ * nodes shared between the two are counted twice, so the count is an upper bound.
+ */
+public final class DerivativeCache {
+    
+    private static final int DEFAULT_MAXIMUM_SIZE = 1024;
+    private static final long DEFAULT_MAXIMUM_NODES = 1 << 20;
+    private static final DerivativeCache SHARED = new DerivativeCache(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_NODES);
+    
+    private final ExpressionFactory factory = new ExpressionFactory();
+    private final LruCache<Key, Result> cache;
+    
+    /**
+     * Make an empty cache.
+     * @param maximumSize maximum number of entries to keep, positive
+     * @param maximumNodes maximum total number of nodes of the entries kept, counting both
+     *        each result and the expression it was computed from, positive; an entry larger
+     *        than this is computed but never kept
+     * @throws IllegalArgumentException if a bound is not positive
+     */
+    public DerivativeCache(int maximumSize, long maximumNodes) {
+        this.cache = new LruCache<>(maximumSize, maximumNodes, result -> result.nodes);
+    }
+    
+    /**
+     * @return a cache shared by the whole program, used by Commands.differentiate
+     */
+    public static DerivativeCache shared() {
+        return SHARED;
+    }
+    
+    /**
+     * Differentiate an expression, or return the derivative already computed for an equal
+     * expression and the same variable.
+     * @param expression expression to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return expression's derivative with respect to variable, as computed by
+     *         ExpressionFactory.differentiate
+     */
+    public Expression differentiate(Expression expression, String variable) {
+        return cache.get(new Key(expression, variable, false),
+                key -> new Result(key, factory.differentiate(key.expression, key.variable))).expression;
+    }
+    
+    /**
+     * Differentiate an expression and reduce the derivative with Simplifier, or return the
+     * result already computed for an equal expression and the same variable.
+     * @param expression expression to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return Simplifier.simplify(differentiate(expression, variable))
+     */
+    public Expression simplifiedDerivative(Expression expression, String variable) {
+        return cache.get(new Key(expression, variable, true),
+                key -> new Result(key, Simplifier.simplify(differentiate(key.expression, key.variable)))).expression;
+    }
+    
+    /** @return number of entries kept, plain and simplified derivatives alike */
+    public int size() {
+        return cache.size();
+    }
+    
+    /** @return total number of nodes of the entries kept, as bounded by maximumNodes */
+    public long nodes() {
+        return cache.weight();
+    }
+    
+    /** @return hit, miss and eviction counts since this cache was made */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+    
+    /** Drop every derivative kept, keeping the counters. */
+    public void clear() {
+        cache.clear();
+    }
+    
+    /**
+     * An expression, a variable to differentiate it by, and whether to simplify the result.
+     */
+    private static final class Key {
+        final Expression expression;
+        final String variable;
+        final boolean simplified;
+        
+        Key(Expression expression, String variable, boolean simplified) {
+            this.expression = expression;
+            this.variable = variable;
+            this.simplified = simplified;
+        }
+        
+        @Override public boolean equals(Object thatObject) {
+            if (!(thatObject instanceof Key)) return false;
+            Key that = (Key) thatObject;
+            return simplified == that.simplified && variable.equals(that.variable) && expression.equals(that.expression);
+        }
+        
+        @Override public int hashCode() {
+            return (expression.hashCode() * 31 + variable.hashCode()) * 31 + Boolean.hashCode(simplified);
+        }
+    }
+    
+    /**
+     * A computed expression and the nodes its entry retains.
+     */
+    private static final class Result {
+        final Expression expression;
+        final int nodes;
+        
+        Result(Key key, Expression expression) {
+            this.expression = expression;
+            final long nodes = (long) ExpressionWalker.nodeCount(key.expression) + ExpressionWalker.nodeCount(expression);
+            this.nodes = (int) Math.min(nodes, Integer.MAX_VALUE);
+        }
+    }
+}
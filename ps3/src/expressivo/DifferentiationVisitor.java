@@ -0,0 +1,77 @@
+package expressivo;
+
+import java.util.List;
+
+/**
+ * Computes derivatives bottom-up, applying the sum and product rules at each node.
+ */
+class DifferentiationVisitor implements ExpressionVisitor<Expression> {
+    
+    private final String variable;
+    private final int variableId; // -1 if no expression mentions variable
+    
+    /**
+     * @param variable the variable to differentiate by
+     */
+    DifferentiationVisitor(String variable) {
+        this.variable = variable;
+        this.variableId = SymbolTable.lookup(variable);
+    }
+    
+    /**
+     * Unused by the walk unless a subclass calls it from shortcut, since
+     * Expression.differentiate keeps the rules' full tree of zero terms for subexpressions
+     * without the variable.
+     * @param node an operation node
+     * @return 0 if node's variable mask (see SymbolTable.mask) rules out the variable, so
+     *         node's derivative is zero; otherwise null, as node may contain the variable
+     */
+    Expression zeroIfIndependent(Expression node) {
+        return SymbolTable.mayContain(node, variableId) ? null : Number.of(0);
+    }
+    
+    @Override public Expression visitNumber(Number number) {
+        return number.differentiate(variable);
+    }
+    
+    @Override public Expression visitVariable(Variable variable) {
+        return variable.differentiate(variableId);
+    }
+    
+    @Override public Expression visitSum(Sum sum, Expression leftDiff, Expression rightDiff) {
+        return new Sum(leftDiff, rightDiff); // Derivative of a sum is the sum of the derivatives
+    }
+    
+    @Override public Expression visitProduct(Product product, Expression leftDiff, Expression rightDiff) {
+        // Apply product rule: f'(x) * g(x) + f(x) * g'(x)
+        Expression leftTerm = new Product(leftDiff, product.right());
+        Expression rightTerm = new Product(product.left(), rightDiff);
+        return new Sum(leftTerm, rightTerm);
+    }
+    
+    @Override public Expression visitNarySum(NarySum sum, List<Expression> termDiffs) {
+        final NarySum.Builder derivative = new NarySum.Builder();
+        for (Expression termDiff : termDiffs) {
+            derivative.add(termDiff); // the constant term's derivative is zero
+        }
+        return derivative.build();
+    }
+    
+    @Override public Expression visitNaryProduct(NaryProduct product, List<Expression> factorDiffs) {
+        // Generalized product rule: sum over i of c * f1 * ... * fi' * ... * fn,
+        // leaving out the terms whose fi' is the constant zero
+        final NarySum.Builder derivative = new NarySum.Builder();
+        for (int i = 0; i < factorDiffs.size(); i++) {
+            final Expression factorDiff = factorDiffs.get(i);
+            if (factorDiff instanceof Number && ((Number) factorDiff).value() == 0) {
+                continue;
+            }
+            final NaryProduct.Builder term = new NaryProduct.Builder().multiply(Number.of(product.coefficient()));
+            for (int j = 0; j < factorDiffs.size(); j++) {
+                term.multiply(j == i ? factorDiff : product.factor(j));
+            }
+            derivative.add(term.build());
+        }
+        return derivative.build();
+    }
+}
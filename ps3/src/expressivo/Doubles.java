@@ -0,0 +1,48 @@
+package expressivo;
+
+import java.math.BigDecimal;
+
+/**
+ * Formats nonnegative doubles as NUMBER tokens of Expression.g4.
+ * 
+ * <p>Double.toString switches to scientific notation such as 1.0E20 outside
+ * [0.001, 10^7), which the grammar cannot parse. Formatting here always uses plain
+ * decimal notation, with the same shortest digits that Double.toString chooses, so the
+ * text parses back to exactly the same double. Integral values, the common case, are
+ * formatted without allocating.
+ */
+final class Doubles {
+    
+    // integral doubles below this are exact longs, and print as digits then ".0"
+    private static final double EXACT_INTEGER_LIMIT = 1e15;
+    
+    private Doubles() {
+        // static utility, not instantiable
+    }
+    
+    /**
+     * @param value a finite nonnegative number
+     * @return text of a NUMBER token denoting value; -0.0 prints as 0.0, since the
+     *         grammar has no negative numbers
+     */
+    static String toString(double value) {
+        return append(new StringBuilder(24), value).toString();
+    }
+    
+    /**
+     * Append the text of toString(value).
+     * @param text receives the text
+     * @param value a finite nonnegative number
+     * @return text
+     */
+    static StringBuilder append(StringBuilder text, double value) {
+        if (value < EXACT_INTEGER_LIMIT && value == (long) value) {
+            return text.append((long) value).append(".0");
+        }
+        final String shortest = Double.toString(value);
+        if (shortest.indexOf('E') < 0) {
+            return text.append(shortest);
+        }
+        return text.append(new BigDecimal(shortest).stripTrailingZeros().toPlainString());
+    }
+}
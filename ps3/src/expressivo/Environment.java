@@ -0,0 +1,439 @@
+package expressivo;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Mutable assignment of values to variables, stored without boxing.
+ *
+ * <p>Each variable name the environment has seen gets a slot, numbered from 0 in order of
+ * first assignment; its value is a double in a primitive array indexed by slot. Names are
+ * interned and found through an open-addressing table of slot numbers, so looking up an
+ * interned name usually costs one hash and one reference comparison. An environment is
+ * meant to be reused: clear() unbinds every variable but keeps the slots, so filling it
+ * again with the same names allocates nothing, and names can be looked up in a region of
+ * a CharSequence without first copying them out as Strings. Every name is also given a
+ * SymbolTable id when it gets a slot, and slots are indexed by id as well, so looking up
+ * a Variable costs one array read and no String work.
+ *
+ * <p>Environment.of(map) instead makes a read-only view of an existing map, so code taking
+ * an Environment also serves callers that have a Map, without copying it.
+ *
+ * Abstraction Function (AF):
+ *   AF(names, values, bound, table, slotCount, size, backing) =
+ *     backing if backing != null, else the assignment mapping names[s] to values[s] for
+ *     every slot s < slotCount with bound[s]
+ *
+ * Representation Invariant (RI):
+ *   if backing != null, slotCount == 0
+ *   names[0..slotCount) are distinct nonempty strings of letters, each the canonical
+ *     SymbolTable name of its id
+ *   slotById[SymbolTable.lookup(names[s])] == s + 1 for every slot s < slotCount;
+ *     every other entry of slotById is 0
+ *   hashes[s] == hash(names[s]) for every slot s < slotCount
+ *   table.length is a power of two, at least twice slotCount
+ *   table[i] == s + 1 for exactly one i for each slot s < slotCount, reached by linear
+ *     probing from hash(names[s]); every other entry of table is 0
+ *   size == number of s < slotCount with bound[s]
+ *
+ * Safety from rep exposure:
+ *   All fields are private, arrays are never returned, and asMap() is an unmodifiable view.
+ *   backing is shared with the caller of of(map) on purpose, and never modified here.
+ */
+public final class Environment {
+
+    private static final int INITIAL_SLOTS = 8;
+
+    private String[] names = new String[INITIAL_SLOTS];
+    private int[] hashes = new int[INITIAL_SLOTS];
+    private double[] values = new double[INITIAL_SLOTS];
+    private boolean[] bound = new boolean[INITIAL_SLOTS];
+    private int[] table = new int[2 * INITIAL_SLOTS];
+    private int[] slotById = new int[0];
+    private int slotCount = 0;
+    private int size = 0;
+    private final Map<String, Double> backing;
+
+    private void checkRep() {
+        assert backing == null || slotCount == 0 : "view must not have slots";
+        assert Integer.bitCount(table.length) == 1 && table.length >= 2 * slotCount : "table too small";
+        assert size >= 0 && size <= slotCount : "size out of range";
+    }
+
+    /**
+     * Make an empty environment.
+     */
+    public Environment() {
+        this(null);
+    }
+
+    private Environment(Map<String, Double> backing) {
+        this.backing = backing;
+        checkRep();
+    }
+
+    /**
+     * Make a read-only view of a map as an environment. The view copies nothing: it reads
+     * the map on every lookup, so it reflects later changes to the map.
+     * @param map maps variables to values, as for Expression.simplify(Map); must not be null
+     * @return an environment assigning exactly the values of map; its set and clear
+     *         methods throw UnsupportedOperationException
+     */
+    public static Environment of(Map<String, Double> map) {
+        if (map == null) {
+            throw new NullPointerException("map");
+        }
+        return new Environment(map);
+    }
+
+    /**
+     * Assign a value to a variable, replacing any value it had.
+     * @param name a case-sensitive nonempty string of letters
+     * @param value value of the variable
+     * @return this environment
+     * @throws IllegalArgumentException if name is not a nonempty string of letters
+     */
+    public Environment set(String name, double value) {
+        return set(name, 0, name.length(), value);
+    }
+
+    /**
+     * Assign a value to a variable named by a region of text, replacing any value it had.
+     * Allocates only if the environment has never seen the name before.
+     * @param text contains the name
+     * @param start index of the first character of the name
+     * @param end index after the last character of the name
+     * @param value value of the variable
+     * @return this environment
+     * @throws IllegalArgumentException if the region is not a nonempty string of letters
+     */
+    public Environment set(CharSequence text, int start, int end, double value) {
+        requireModifiable();
+        if (!isName(text, start, end)) {
+            throw new IllegalArgumentException("not a variable name: " + text.subSequence(start, end));
+        }
+        int slot = find(text, start, end);
+        if (slot < 0) {
+            slot = add(text.subSequence(start, end).toString());
+        }
+        values[slot] = value;
+        if (!bound[slot]) {
+            bound[slot] = true;
+            size++;
+        }
+        checkRep();
+        return this;
+    }
+
+    /**
+     * Unbind every variable.
+     */
+    public void clear() {
+        requireModifiable();
+        Arrays.fill(bound, 0, slotCount, false);
+        size = 0;
+        checkRep();
+    }
+
+    /**
+     * @return number of variables with a value
+     */
+    public int size() {
+        return backing != null ? backing.size() : size;
+    }
+
+    /**
+     * @param name a variable name
+     * @return true if and only if name has a value
+     */
+    public boolean contains(String name) {
+        if (backing != null) {
+            return backing.get(name) != null;
+        }
+        return boundSlot(name) >= 0;
+    }
+
+    /**
+     * @param name a variable name
+     * @return the value of name
+     * @throws NoSuchElementException if name has no value
+     */
+    public double get(String name) {
+        if (backing != null) {
+            final Double value = backing.get(name);
+            if (value == null) {
+                throw new NoSuchElementException("no value for variable " + name);
+            }
+            return value;
+        }
+        final int slot = boundSlot(name);
+        if (slot < 0) {
+            throw new NoSuchElementException("no value for variable " + name);
+        }
+        return values[slot];
+    }
+
+    /**
+     * @param variable a variable
+     * @return the value of variable as a Number, or null if it has no value
+     */
+    Number substitute(Variable variable) {
+        if (backing != null) {
+            final Double value = backing.get(variable.name());
+            return value == null ? null : Number.of(value);
+        }
+        final int slot = boundSlot(variable);
+        return slot < 0 ? null : Number.of(values[slot]);
+    }
+
+    /**
+     * @param variable a variable
+     * @return the value of variable
+     * @throws IllegalArgumentException if variable has no value
+     */
+    double require(Variable variable) {
+        if (backing == null) {
+            final int slot = boundSlot(variable);
+            if (slot >= 0) {
+                return values[slot];
+            }
+        }
+        return require(variable.name());
+    }
+
+    /**
+     * @param name a variable name
+     * @return the value of name
+     * @throws IllegalArgumentException if name has no value
+     */
+    double require(String name) {
+        if (backing != null) {
+            final Double value = backing.get(name);
+            if (value != null) {
+                return value;
+            }
+        } else {
+            final int slot = boundSlot(name);
+            if (slot >= 0) {
+                return values[slot];
+            }
+        }
+        throw new IllegalArgumentException("no value for variable " + name);
+    }
+
+    /**
+     * @return an unmodifiable view of this environment as a map, which reflects later changes
+     */
+    public Map<String, Double> asMap() {
+        return backing != null ? Collections.unmodifiableMap(backing) : new MapView();
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    /**
+     * @return true if and only if text[start..end) is a nonempty string of letters
+     */
+    static boolean isName(CharSequence text, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isLetter(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if and only if c may appear in a variable name
+     */
+    static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private void requireModifiable() {
+        if (backing != null) {
+            throw new UnsupportedOperationException("environment is a read-only view of a map");
+        }
+    }
+
+    /**
+     * @return the slot of variable if it has a value, otherwise -1
+     */
+    private int boundSlot(Variable variable) {
+        final int id = variable.id();
+        final int slot = id < slotById.length ? slotById[id] - 1 : -1;
+        return slot >= 0 && bound[slot] ? slot : -1;
+    }
+
+    /**
+     * @return the slot of name if name has a value, otherwise -1
+     */
+    private int boundSlot(String name) {
+        final int h = hash(name);
+        final int mask = table.length - 1;
+        for (int i = h & mask; table[i] != 0; i = (i + 1) & mask) {
+            final int slot = table[i] - 1;
+            final String candidate = names[slot];
+            // names are canonical SymbolTable names, so the name of a Variable is found by reference
+            if (candidate == name || hashes[slot] == h && candidate.equals(name)) {
+                return bound[slot] ? slot : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return spread of the String.hashCode of text[start..end), so that a region hashes
+     *         like the String it spells
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return spread(h);
+    }
+
+    /**
+     * @return spread of name's hash code, which String caches
+     */
+    private static int hash(String name) {
+        return spread(name.hashCode());
+    }
+
+    // multiplying by the golden ratio scatters runs of similar names such as "ba", "bb", ...
+    // whose String hash codes are consecutive, and would otherwise cluster under linear probing
+    private static int spread(int h) {
+        final int x = h * 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+
+    /**
+     * @return the slot of the name text[start..end), bound or not, or -1 if it has none
+     */
+    private int find(CharSequence text, int start, int end) {
+        final int h = hash(text, start, end);
+        final int mask = table.length - 1;
+        for (int i = h & mask; table[i] != 0; i = (i + 1) & mask) {
+            final int slot = table[i] - 1;
+            if (hashes[slot] == h && regionEquals(names[slot], text, start, end)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Give a new name the next slot, unbound.
+     * @return the new slot
+     */
+    private int add(String name) {
+        if (slotCount == names.length) {
+            names = Arrays.copyOf(names, 2 * slotCount);
+            hashes = Arrays.copyOf(hashes, 2 * slotCount);
+            values = Arrays.copyOf(values, 2 * slotCount);
+            bound = Arrays.copyOf(bound, 2 * slotCount);
+            table = new int[4 * slotCount];
+            for (int slot = 0; slot < slotCount; slot++) {
+                insert(slot);
+            }
+        }
+        final int id = SymbolTable.intern(name);
+        if (id >= slotById.length) {
+            slotById = Arrays.copyOf(slotById, Math.max(2 * slotById.length, id + 1));
+        }
+        slotById[id] = slotCount + 1;
+        names[slotCount] = SymbolTable.name(id);
+        hashes[slotCount] = hash(name);
+        insert(slotCount);
+        return slotCount++;
+    }
+
+    private void insert(int slot) {
+        final int mask = table.length - 1;
+        int i = hashes[slot] & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    /**
+     * Read-only Map view of the bound variables, in slot order.
+     */
+    private final class MapView extends AbstractMap<String, Double> {
+
+        @Override public int size() {
+            return size;
+        }
+
+        @Override public boolean containsKey(Object key) {
+            return key instanceof String && contains((String) key);
+        }
+
+        @Override public Double get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            final int slot = boundSlot((String) key);
+            return slot < 0 ? null : values[slot];
+        }
+
+        @Override public Set<Map.Entry<String, Double>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Double>>() {
+                @Override public int size() {
+                    return size;
+                }
+
+                @Override public Iterator<Map.Entry<String, Double>> iterator() {
+                    return new Iterator<Map.Entry<String, Double>>() {
+                        private int next = nextBound(0);
+
+                        @Override public boolean hasNext() {
+                            return next < slotCount;
+                        }
+
+                        @Override public Map.Entry<String, Double> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final Map.Entry<String, Double> entry = new SimpleImmutableEntry<>(names[next], values[next]);
+                            next = nextBound(next + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+
+        private int nextBound(int slot) {
+            while (slot < slotCount && !bound[slot]) {
+                slot++;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package expressivo;
+
+/**
+ * A function that evaluates one fixed expression for given variable values.
+ */
+public interface Evaluator {
+    
+    /**
+     * @param values value of each variable of the expression, indexed by slot
+     * @return value of the expression with every variable replaced by its value
+     */
+    double eval(double[] values);
+}
@@ -3,17 +3,17 @@
  */
 package expressivo;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 
 
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.DiagnosticErrorListener;
 import org.antlr.v4.runtime.tree.ParseTree;
-import expressivo.parser.ExpressionLexer;
 import expressivo.parser.ExpressionParser;
-import expressivo.parser.ExpressionParser.RootContext;
 import expressivo.parser.ExpressionParser.SumContext;
 import expressivo.parser.ExpressionParser.PrimitiveContext;
 
@@ -36,68 +36,120 @@ public interface Expression {
     /**
      * Parse an expression.
      * @param input expression to parse, as defined in the PS3 handout.
-     * @return expression AST for the input
+     * @return expression AST for the input; may be a cached instance if a ParseCache is enabled
      * @throws IllegalArgumentException if the expression is invalid
      */
 	public static Expression parse(String input) {
-	    // Convert the input string into a CharStream
-		CharStream stream = new ANTLRInputStream(input);
-	    
-	    // Create the lexer
-	    ExpressionLexer lexer = new ExpressionLexer(stream);
-	    lexer.removeErrorListeners();  // Remove default error listeners
-	    lexer.addErrorListener(new DiagnosticErrorListener());  // Add custom error listener to throw exceptions
-	    
-	    // Tokenize the input
-	    CommonTokenStream tokens = new CommonTokenStream(lexer);
-	    
-	    // Create the parser
-	    ExpressionParser parser = new ExpressionParser(tokens);
-	    parser.removeErrorListeners();  // Remove default error listeners
-	    parser.addErrorListener(new DiagnosticErrorListener());  // Add custom error listener
-	    
-	    // Parse the input to get the parse tree for the root expression
-	    RootContext rootContext = parser.root();  // Parse starting from the root rule
-	    
-	    // Build the expression from the parse tree
-	    return buildExpressionFromParseTree(rootContext);  // You need to implement this method
+	    final ParseCache cache = ParseCache.enabled();
+	    if (cache != null) {
+	        return cache.parse(input);
+	    }
+	    // Lexer and parser instances are reused per thread, see ExpressionParserPool
+	    return ExpressionParserPool.shared().parse(input);
 	}
-	
+
+    /**
+     * Parse an expression with a chosen parser implementation.
+     * @param input expression to parse, as defined in the PS3 handout.
+     * @param mode parser implementation to use; every mode rejects the same inputs, and
+     *        all modes except FLATTENED return equal expressions for the same input
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+	public static Expression parse(CharSequence input, ParseMode mode) {
+	    switch (mode) {
+	    case RECURSIVE_DESCENT:
+	        return RecursiveDescentParser.parse(input);
+	    case FLATTENED:
+	        return RecursiveDescentParser.parseFlat(input);
+	    case ANTLR:
+	    default:
+	        return parse(input.toString());
+	    }
+	}
+
 	public static Expression buildExpressionFromParseTree(ParseTree tree) {
-	    // Handle base case: leaf nodes (Number or Variable)
-	    if (tree instanceof ExpressionParser.PrimitiveContext) {
-	        ExpressionParser.PrimitiveContext primitiveContext = (ExpressionParser.PrimitiveContext) tree;
+	    // Walk the parse tree with explicit stacks instead of recursion, so that deeply
+	    // nested input cannot overflow the call stack. A rule with children is pushed twice:
+	    // once to expand its children, and again beneath them to combine their results.
+	    Deque<ParseTree> work = new ArrayDeque<>();
+	    Deque<Boolean> expanded = new ArrayDeque<>();
+	    List<Expression> results = new ArrayList<>();
+	    work.push(tree);
+	    expanded.push(false);
+	    
+	    while (!work.isEmpty()) {
+	        ParseTree node = work.pop();
+	        boolean childrenDone = expanded.pop();
 	        
-	        // Check if it's a NUMBER (literal number)
-	        if (primitiveContext.NUMBER() != null) {
-	            String numberStr = primitiveContext.NUMBER().getText();
-	            return new Number(Double.parseDouble(numberStr));
+	        // Handle the start rule: root : sum EOF
+	        if (node instanceof ExpressionParser.RootContext) {
+	            work.push(((ExpressionParser.RootContext) node).sum());
+	            expanded.push(false);
 	        }
 	        
-	        // Otherwise, it should be a sum inside parentheses
-	        if (primitiveContext.sum() != null) {
-	            return buildExpressionFromParseTree(primitiveContext.sum());
+	        // Handle base case: leaf nodes (Number or Variable)
+	        else if (node instanceof ExpressionParser.PrimitiveContext) {
+	            ExpressionParser.PrimitiveContext primitiveContext = (ExpressionParser.PrimitiveContext) node;
+	            
+	            // Check if it's a NUMBER (literal number)
+	            if (primitiveContext.NUMBER() != null) {
+	                String numberStr = primitiveContext.NUMBER().getText();
+	                results.add(Number.of(Double.parseDouble(numberStr)));
+	            }
+	            
+	            // Check if it's a VARIABLE
+	            else if (primitiveContext.VARIABLE() != null) {
+	                results.add(new Variable(primitiveContext.VARIABLE().getText()));
+	            }
+	            
+	            // Otherwise, it should be a sum inside parentheses
+	            else if (primitiveContext.sum() != null) {
+	                work.push(primitiveContext.sum());
+	                expanded.push(false);
+	            }
+	            
+	            else {
+	                throw new IllegalArgumentException("Unsupported parse tree structure: empty primitive");
+	            }
 	        }
-	    }
-	    
-	    // Handle internal nodes: Sum
-	    if (tree instanceof ExpressionParser.SumContext) {
-	        ExpressionParser.SumContext sumContext = (ExpressionParser.SumContext) tree;
 	        
-	        // Build the leftmost expression
-	        Expression left = buildExpressionFromParseTree(sumContext.primitive(0));
-	        
-	        // Iterate through all the other terms in the sum
-	        for (int i = 1; i < sumContext.primitive().size(); i++) {
-	            Expression right = buildExpressionFromParseTree(sumContext.primitive(i));
-	            left = new Sum(left, right); // Add the next primitive to the sum
+	        // Handle internal nodes: Sum and Product, whose operands are folded to the left
+	        else if (node instanceof ExpressionParser.SumContext || node instanceof ExpressionParser.ProductContext) {
+	            boolean isSum = node instanceof ExpressionParser.SumContext;
+	            List<? extends ParseTree> operands = isSum
+	                    ? ((ExpressionParser.SumContext) node).product()
+	                    : ((ExpressionParser.ProductContext) node).primitive();
+	            
+	            if (!childrenDone) {
+	                work.push(node);
+	                expanded.push(true);
+	                // Push operands right to left, so the leftmost one is built first
+	                for (int i = operands.size() - 1; i >= 0; i--) {
+	                    work.push(operands.get(i));
+	                    expanded.push(false);
+	                }
+	                continue;
+	            }
+	            
+	            // The results for the operands are now the last operands.size() results
+	            int first = results.size() - operands.size();
+	            Expression left = results.get(first);
+	            for (int i = first + 1; i < results.size(); i++) {
+	                Expression right = results.get(i);
+	                left = isSum ? new Sum(left, right) : new Product(left, right);
+	            }
+	            results.subList(first, results.size()).clear();
+	            results.add(left);
 	        }
 	        
-	        return left;
+	        // Handle unexpected cases
+	        else {
+	            throw new IllegalArgumentException("Unsupported parse tree structure: " + node.getClass().getName());
+	        }
 	    }
 	    
-	    // Handle unexpected cases
-	    throw new IllegalArgumentException("Unsupported parse tree structure: " + tree.getClass().getName());
+	    return results.get(0);
 	}
 
 
@@ -108,6 +160,34 @@ public interface Expression {
      */
     @Override 
     public String toString();
+    
+    /**
+     * @param mode how to parenthesize
+     * @return a parsable representation of this expression, printed as by appendTo
+     */
+    public default String toString(PrintMode mode) {
+        return ExpressionWalker.print(this, mode);
+    }
+    
+    /**
+     * Append the text of toString() to out, without building an intermediate String.
+     * @param out receives the text
+     * @throws IOException if out fails
+     */
+    public default void appendTo(Appendable out) throws IOException {
+        appendTo(out, PrintMode.FULLY_PARENTHESIZED);
+    }
+    
+    /**
+     * Append a parsable representation of this expression to out. Numbers are printed in
+     * plain decimal notation, never scientific notation, and parse back to the same value.
+     * @param out receives the text
+     * @param mode how to parenthesize
+     * @throws IOException if out fails
+     */
+    public default void appendTo(Appendable out, PrintMode mode) throws IOException {
+        ExpressionWalker.print(this, mode, out);
+    }
 
     /**
      * @param thatObject any object
@@ -137,6 +217,46 @@ public interface Expression {
      *         the expression and the environment with its value, environment.get(v). If there are no
      *         variables left in this expression after substitution, it's evaluated to a single number.
      */
-   // public Expression simplify(Map<String, Double> environment);
+    public Expression simplify(Map<String, Double> environment);
     
+    /**
+     * Simplify an expression, as simplify(Map) does, looking variables up in an Environment.
+     * With a reused Environment, values are never boxed.
+     * @param environment assigns values to variables, as for simplify(Map)
+     * @return an expression equal to simplify(environment.asMap())
+     */
+    public default Expression simplify(Environment environment) {
+        return ExpressionWalker.walk(this, new SubstitutionVisitor(environment));
+    }
+    
+    /**
+     * Evaluate an expression, without building any intermediate expression.
+     * @param environment assigns a value to every variable of this expression
+     * @return the value of this expression with every variable replaced by its value in
+     *         environment; equal to the value of simplify(environment), which is a Number
+     * @throws IllegalArgumentException if environment has no value for a variable of this expression
+     */
+    public default double evaluate(Environment environment) {
+        return ExpressionWalker.evaluate(this, environment);
+    }
+    
+    
+    /**
+     * Write a compact binary encoding of this expression, as specified by ExpressionCodec.
+     * @param buffer receives the encoding at its position, which advances past it
+     * @throws java.nio.BufferOverflowException if buffer has too little room remaining
+     */
+    public default void writeTo(ByteBuffer buffer) {
+        ExpressionCodec.writeTo(this, buffer);
+    }
+    
+    /**
+     * Read an expression written by writeTo.
+     * @param buffer holds the encoding at its position, which advances past it
+     * @return an expression structurally equal to the one written
+     * @throws IllegalArgumentException if buffer does not hold a valid encoding
+     */
+    public static Expression readFrom(ByteBuffer buffer) {
+        return ExpressionCodec.readFrom(buffer);
+    }
 }
@@ -0,0 +1,414 @@
+package expressivo;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of expressions.
+ * 
+ * <p>An encoding is a format version byte, a table of variable names, and the nodes of
+ * the expression in prefix order:
+ * <pre>
+ *   encoding  ::= VERSION names node
+ *   names     ::= varint(count) (varint(length) ascii-bytes)*
+ *   node      ::= NUMBER double            -- raw IEEE 754 bits, big-endian
+ *               | INTEGER varint           -- a Number whose value is that integer
+ *               | VARIABLE varint(name index)
+ *               | SUM node node | PRODUCT node node
+ *               | NARY_SUM varint(count) double(constant) node*
+ *               | NARY_PRODUCT varint(count) double(coefficient) node*
+ *               | REFERENCE varint(operation index)
+ * </pre>
+ * Operations (every node but NUMBER, INTEGER and VARIABLE) are numbered in prefix order,
+ * and an operation structurally equal to one already written is encoded as a REFERENCE
+ * to it, so repeated subtrees are stored once. Varints are unsigned LEB128.
+ * 
+ * <p>Decoding round-trips exactly: the decoded expression is structurally equal to the
+ * encoded one, with every number bit-for-bit identical; subtrees that were encoded as
+ * references, and all occurrences of a variable, are shared nodes. Neither direction recurses, so expressions of any
+ * depth can be encoded and decoded.
+ */
+public final class ExpressionCodec {
+    
+    private static final byte VERSION = 1;
+    
+    private static final int NUMBER = 0;
+    private static final int INTEGER = 1;
+    private static final int VARIABLE = 2;
+    private static final int SUM = 3;
+    private static final int PRODUCT = 4;
+    private static final int NARY_SUM = 5;
+    private static final int NARY_PRODUCT = 6;
+    private static final int REFERENCE = 7;
+    
+    private ExpressionCodec() {
+        // static utility, not instantiable
+    }
+    
+    /**
+     * @param expression expression to encode
+     * @return the encoding of expression
+     */
+    public static byte[] encode(Expression expression) {
+        return new Encoder().encode(expression);
+    }
+    
+    /**
+     * Write the encoding of an expression at a buffer's position, advancing the position
+     * past it.
+     * @param expression expression to encode
+     * @param buffer receives the encoding
+     * @throws java.nio.BufferOverflowException if buffer has too little room remaining;
+     *         then nothing is written
+     */
+    public static void writeTo(Expression expression, ByteBuffer buffer) {
+        buffer.put(encode(expression));
+    }
+    
+    /**
+     * Read an encoded expression at a buffer's position, advancing the position past it.
+     * @param buffer holds an encoding written by writeTo or encode
+     * @return the decoded expression
+     * @throws IllegalArgumentException if buffer does not hold a valid encoding
+     */
+    public static Expression readFrom(ByteBuffer buffer) {
+        try {
+            return new Decoder(buffer).decode();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated or malformed expression encoding", e);
+        }
+    }
+    
+    /**
+     * @param bytes an encoding written by writeTo or encode
+     * @return the decoded expression
+     * @throws IllegalArgumentException if bytes is not a valid encoding
+     */
+    public static Expression decode(byte[] bytes) {
+        return readFrom(ByteBuffer.wrap(bytes));
+    }
+    
+    /**
+     * Writes one expression: nodes go to a body buffer while the name table is built,
+     * then both are assembled.
+     */
+    private static final class Encoder {
+        private byte[] body = new byte[64];
+        private int length = 0;
+        private final Map<String, Integer> names = new HashMap<>();
+        private final List<String> nameList = new ArrayList<>();
+        private final Map<Expression, Integer> operations = new HashMap<>();
+        
+        byte[] encode(Expression expression) {
+            final Deque<Expression> work = new ArrayDeque<>();
+            work.push(expression);
+            while (!work.isEmpty()) {
+                final Expression node = work.pop();
+                if (node instanceof Number) {
+                    number(((Number) node).value());
+                } else if (node instanceof Variable) {
+                    final String name = ((Variable) node).name();
+                    Integer index = names.get(name);
+                    if (index == null) {
+                        index = nameList.size();
+                        names.put(name, index);
+                        nameList.add(name);
+                    }
+                    write(VARIABLE);
+                    varint(index);
+                } else {
+                    final Integer reference = operations.get(node);
+                    if (reference != null) {
+                        write(REFERENCE);
+                        varint(reference);
+                        continue;
+                    }
+                    operations.put(node, operations.size());
+                    operation(node, work);
+                }
+            }
+            
+            final ByteBuffer out = ByteBuffer.allocate(1 + 5 + nameTableSize() + length);
+            out.put(VERSION);
+            putVarint(out, nameList.size());
+            for (String name : nameList) {
+                putVarint(out, name.length());
+                out.put(name.getBytes(StandardCharsets.US_ASCII));
+            }
+            out.put(body, 0, length);
+            return Arrays.copyOf(out.array(), out.position());
+        }
+        
+        /**
+         * Write the header of an operation, and push its operands so that they are
+         * written next, left to right.
+         */
+        private void operation(Expression node, Deque<Expression> work) {
+            if (node instanceof Sum) {
+                write(SUM);
+                work.push(((Sum) node).right());
+                work.push(((Sum) node).left());
+            } else if (node instanceof Product) {
+                write(PRODUCT);
+                work.push(((Product) node).right());
+                work.push(((Product) node).left());
+            } else if (node instanceof NarySum) {
+                final NarySum sum = (NarySum) node;
+                write(NARY_SUM);
+                varint(sum.termCount());
+                rawDouble(sum.constant());
+                for (int i = sum.termCount() - 1; i >= 0; i--) {
+                    work.push(sum.term(i));
+                }
+            } else if (node instanceof NaryProduct) {
+                final NaryProduct product = (NaryProduct) node;
+                write(NARY_PRODUCT);
+                varint(product.factorCount());
+                rawDouble(product.coefficient());
+                for (int i = product.factorCount() - 1; i >= 0; i--) {
+                    work.push(product.factor(i));
+                }
+            } else {
+                throw new IllegalArgumentException("cannot encode " + node.getClass().getName());
+            }
+        }
+        
+        private void number(double value) {
+            final long integer = (long) value;
+            if (integer >= 0 && integer <= Integer.MAX_VALUE
+                    && Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(integer)) {
+                write(INTEGER);
+                varint((int) integer);
+            } else {
+                write(NUMBER);
+                rawDouble(value);
+            }
+        }
+        
+        private int nameTableSize() {
+            int size = 0;
+            for (String name : nameList) {
+                size += 5 + name.length();
+            }
+            return size;
+        }
+        
+        private void write(int b) {
+            if (length == body.length) {
+                body = Arrays.copyOf(body, 2 * length);
+            }
+            body[length++] = (byte) b;
+        }
+        
+        private void varint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+        
+        private void rawDouble(double value) {
+            final long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (bits >>> shift));
+            }
+        }
+        
+        private static void putVarint(ByteBuffer out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+    }
+    
+    /**
+     * Reads one expression, assembling operations bottom-up with an explicit stack of
+     * operations whose operands are still being read.
+     */
+    private static final class Decoder {
+        private final ByteBuffer in;
+        private final List<Expression> operations = new ArrayList<>();
+        
+        Decoder(ByteBuffer in) {
+            this.in = in;
+        }
+        
+        Expression decode() {
+            if (in.get() != VERSION) {
+                throw new IllegalArgumentException("unsupported expression encoding version");
+            }
+            // every name takes at least one byte, so a count or length beyond the bytes
+            // left is malformed input, rejected before it sizes an array
+            final Variable[] variables = new Variable[size()]; // one shared node per name
+            for (int i = 0; i < variables.length; i++) {
+                final byte[] bytes = new byte[size()];
+                in.get(bytes);
+                final String name = new String(bytes, StandardCharsets.US_ASCII);
+                if (!SymbolTable.isName(name)) {
+                    throw new IllegalArgumentException("invalid variable name " + name);
+                }
+                variables[i] = new Variable(name);
+            }
+            
+            final Deque<Pending> open = new ArrayDeque<>();
+            final List<Expression> operands = new ArrayList<>(); // operands of the open operations, innermost last
+            while (true) {
+                final int opcode = in.get();
+                Expression done;
+                switch (opcode) {
+                case NUMBER:
+                    done = Number.of(nonnegative());
+                    break;
+                case INTEGER:
+                    done = Number.of(varint());
+                    break;
+                case VARIABLE:
+                    done = variables[varint()];
+                    break;
+                case REFERENCE:
+                    done = operations.get(varint());
+                    if (done == null) {
+                        throw new IllegalArgumentException("reference to an unfinished operation");
+                    }
+                    break;
+                case SUM:
+                case PRODUCT:
+                    open.push(new Pending(opcode, 2, 0, operations.size(), operands.size()));
+                    operations.add(null);
+                    continue;
+                case NARY_SUM:
+                case NARY_PRODUCT:
+                    final int count = varint();
+                    open.push(new Pending(opcode, count, nonnegative(), operations.size(), operands.size()));
+                    operations.add(null);
+                    continue;
+                default:
+                    throw new IllegalArgumentException("unknown opcode " + opcode);
+                }
+                
+                // hand the finished node to its parent, finishing every parent it completes
+                while (!open.isEmpty()) {
+                    final Pending parent = open.peek();
+                    operands.add(done);
+                    if (operands.size() - parent.base < parent.count) {
+                        break;
+                    }
+                    open.pop();
+                    final List<Expression> own = operands.subList(parent.base, operands.size());
+                    done = parent.build(own);
+                    own.clear();
+                    operations.set(parent.index, done);
+                }
+                if (open.isEmpty()) {
+                    return done;
+                }
+            }
+        }
+        
+        /**
+         * @return a double that a Number may hold
+         * @throws IllegalArgumentException if it is negative or NaN
+         */
+        private double nonnegative() {
+            final double value = in.getDouble();
+            if (!(value >= 0)) {
+                throw new IllegalArgumentException("invalid number " + value);
+            }
+            return value;
+        }
+        
+        /**
+         * @return a varint that counts bytes still to be read
+         * @throws IllegalArgumentException if it exceeds the bytes remaining
+         */
+        private int size() {
+            final int size = varint();
+            if (size > in.remaining()) {
+                throw new IllegalArgumentException("size " + size + " exceeds the " + in.remaining() + " bytes remaining");
+            }
+            return size;
+        }
+        
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final int b = in.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw new IllegalArgumentException("varint out of range");
+                    }
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("varint too long");
+        }
+    }
+    
+    /**
+     * An operation whose operands are still being read.
+     */
+    private static final class Pending {
+        final int opcode;
+        final int count;
+        final double constant;
+        final int index;
+        final int base;
+        
+        /**
+         * @param opcode opcode of the operation
+         * @param count number of operands
+         * @param constant constant or coefficient of an n-ary operation
+         * @param index the operation's number in prefix order
+         * @param base size of the decoder's operand stack when the operation was opened
+         */
+        Pending(int opcode, int count, double constant, int index, int base) {
+            if (count < 1) {
+                throw new IllegalArgumentException("operation without operands");
+            }
+            this.opcode = opcode;
+            this.count = count;
+            this.constant = constant;
+            this.index = index;
+            this.base = base;
+        }
+        
+        /**
+         * @param operands the operation's operands, in order
+         * @return the operation
+         */
+        Expression build(List<Expression> operands) {
+            switch (opcode) {
+            case SUM:
+                return new Sum(operands.get(0), operands.get(1));
+            case PRODUCT:
+                return new Product(operands.get(0), operands.get(1));
+            case NARY_SUM: {
+                final NarySum.Builder sum = new NarySum.Builder();
+                for (Expression term : operands) {
+                    sum.add(term);
+                }
+                return sum.add(Number.of(constant)).build();
+            }
+            default: {
+                final NaryProduct.Builder product = new NaryProduct.Builder().multiply(Number.of(constant));
+                for (Expression factor : operands) {
+                    product.multiply(factor);
+                }
+                return product.build();
+            }
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package expressivo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles expressions to JVM bytecode.
+ *
+ * <p>Each expression becomes a small generated class implementing {@link Evaluator}, whose
+ * eval method is the expression's arithmetic as straight-line bytecode: no loop, no
+ * dispatch and no recursion, so the JIT compiles it to the same machine code as a
+ * hand-written method. Each class is defined by its own class loader, so it can be
+ * unloaded once the evaluator is unreachable.
+ *
+ * <p>Generated evaluators are cached by expression, so an expression is compiled once while
+ * it stays among the most recently compiled; the cache is bounded, since every cached
+ * evaluator pins a class and its class loader. Expressions whose eval method would exceed
+ * 8000 bytes of bytecode fall back to an evaluator that interprets the
+ * {@link CompiledExpression} program instead: HotSpot does not JIT-compile methods that
+ * large, and interpreted bytecode is slower than the interpreter loop once that is
+ * compiled.
+ *
+ * <p>Slots of the evaluators' values arrays are numbered as in
+ * {@code CompiledExpression.compile(expression).variables()}.
+ */
+public final class ExpressionCompiler {
+
+    /** maximum number of evaluators kept by the cache */
+    static final int MAXIMUM_CACHE_SIZE = 1024;
+
+    private static final LruCache<Expression, Evaluator> CACHE =
+            new LruCache<>(MAXIMUM_CACHE_SIZE, MAXIMUM_CACHE_SIZE, evaluator -> 1);
+    private static final AtomicLong CLASS_COUNTER = new AtomicLong();
+
+    private ExpressionCompiler() {
+        // static utility, not instantiable
+    }
+
+    /**
+     * Compile an expression to bytecode, or return the evaluator already compiled for an
+     * equal expression.
+     * @param expression expression to compile
+     * @return evaluator for expression
+     */
+    public static Evaluator compile(Expression expression) {
+        return CACHE.get(expression, e -> compile(CompiledExpression.compile(e)));
+    }
+
+    /**
+     * Compile a postfix program to bytecode, bypassing the cache.
+     * @param program program to compile
+     * @return evaluator for program, with the same slots as program
+     */
+    public static Evaluator compile(CompiledExpression program) {
+        final String className = "expressivo/GeneratedEvaluator" + CLASS_COUNTER.incrementAndGet();
+        final byte[] classFile;
+        try {
+            classFile = new ClassFileWriter(className).write(program);
+        } catch (CodeTooLargeException tooLarge) {
+            return program::evaluate;
+        }
+        try {
+            final Class<?> evaluatorClass = new EvaluatorLoader().define(className.replace('/', '.'), classFile);
+            return (Evaluator) evaluatorClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException roe) {
+            throw new AssertionError("generated evaluator is not instantiable", roe);
+        }
+    }
+
+    /**
+     * @return number of evaluators kept by the cache, at most MAXIMUM_CACHE_SIZE
+     */
+    public static int cacheSize() {
+        return CACHE.size();
+    }
+
+    /**
+     * Drop every cached evaluator, so that their classes can be unloaded.
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * Class loader for exactly one generated class.
+     */
+    private static final class EvaluatorLoader extends ClassLoader {
+        EvaluatorLoader() {
+            super(ExpressionCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+
+    /**
+     * Thrown when a program exceeds a limit of the class file format, or would make an
+     * eval method too long for the JIT to compile.
+     */
+    private static final class CodeTooLargeException extends Exception {
+        private static final long serialVersionUID = 1;
+    }
+
+    /**
+     * Writes a class file for one program, in the Java 8 (version 52) class file format.
+     * The class has a public no-argument constructor and a public eval([D)D method;
+     * eval has no branches, so it needs no StackMapTable.
+     */
+    private static final class ClassFileWriter implements CompiledExpression.InstructionVisitor {
+        private static final int MAX_U2 = 0xFFFF;
+        // HotSpot's HugeMethodLimit: longer methods are never JIT-compiled
+        private static final int MAX_COMPILABLE_CODE = 8000;
+
+        // constant pool entries that every generated class starts with
+        private static final int THIS_CLASS = 2;
+        private static final int OBJECT_CLASS = 4;
+        private static final int EVALUATOR_CLASS = 6;
+        private static final int OBJECT_INIT = 10;
+        private static final int CODE = 11;
+        private static final int EVAL_NAME = 12;
+        private static final int EVAL_DESCRIPTOR = 13;
+        private static final int INIT_NAME = 7;
+        private static final int INIT_DESCRIPTOR = 8;
+        private static final int FIRST_FREE_CONSTANT = 14;
+
+        private static final int ACC_PUBLIC = 0x0001;
+        private static final int ACC_FINAL = 0x0010;
+        private static final int ACC_SUPER = 0x0020;
+
+        private static final int ICONST_0 = 0x03;
+        private static final int DCONST_0 = 0x0e;
+        private static final int DCONST_1 = 0x0f;
+        private static final int BIPUSH = 0x10;
+        private static final int SIPUSH = 0x11;
+        private static final int LDC2_W = 0x14;
+        private static final int ALOAD_0 = 0x2a;
+        private static final int ALOAD_1 = 0x2b;
+        private static final int DALOAD = 0x31;
+        private static final int DADD = 0x63;
+        private static final int DMUL = 0x6b;
+        private static final int DRETURN = 0xaf;
+        private static final int RETURN = 0xb1;
+        private static final int INVOKESPECIAL = 0xb7;
+
+        private final String className;
+        private final ByteArrayOutputStream constantBytes = new ByteArrayOutputStream();
+        private final DataOutputStream constantPool = new DataOutputStream(constantBytes);
+        private final Map<Long, Integer> doubleConstants = new HashMap<>();
+        private int nextConstant = FIRST_FREE_CONSTANT;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int depth = 0; // stack depth in JVM slots
+        private int maxDepth = 0;
+        private boolean tooLarge = false;
+
+        ClassFileWriter(String className) {
+            this.className = className;
+        }
+
+        byte[] write(CompiledExpression program) throws CodeTooLargeException {
+            program.replay(this);
+            code.write(DRETURN);
+            if (tooLarge || code.size() > MAX_COMPILABLE_CODE || nextConstant > MAX_U2 || maxDepth > MAX_U2) {
+                throw new CodeTooLargeException();
+            }
+            try {
+                return classFile();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe); // impossible, writing to memory
+            }
+        }
+
+        @Override public void constant(double value) {
+            final long bits = Double.doubleToRawLongBits(value);
+            if (bits == Double.doubleToRawLongBits(0.0)) {
+                code.write(DCONST_0);
+            } else if (bits == Double.doubleToRawLongBits(1.0)) {
+                code.write(DCONST_1);
+            } else {
+                final int index = doubleConstant(bits);
+                code.write(LDC2_W);
+                code.write(index >>> 8);
+                code.write(index);
+            }
+            push(2);
+        }
+
+        @Override public void load(int slot) {
+            code.write(ALOAD_1);
+            if (slot <= 5) {
+                code.write(ICONST_0 + slot);
+            } else if (slot <= Byte.MAX_VALUE) {
+                code.write(BIPUSH);
+                code.write(slot);
+            } else if (slot <= Short.MAX_VALUE) {
+                code.write(SIPUSH);
+                code.write(slot >>> 8);
+                code.write(slot);
+            } else {
+                tooLarge = true;
+            }
+            push(2); // the array reference and index, briefly
+            code.write(DALOAD);
+        }
+
+        @Override public void add() {
+            code.write(DADD);
+            depth -= 2;
+        }
+
+        @Override public void multiply() {
+            code.write(DMUL);
+            depth -= 2;
+        }
+
+        private void push(int slots) {
+            depth += slots;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private int doubleConstant(long bits) {
+            Integer index = doubleConstants.get(bits);
+            if (index == null) {
+                index = nextConstant;
+                nextConstant += 2; // doubles take two constant pool entries
+                doubleConstants.put(bits, index);
+                try {
+                    constantPool.writeByte(6); // CONSTANT_Double
+                    constantPool.writeLong(bits);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe); // impossible, writing to memory
+                }
+            }
+            return index;
+        }
+
+        private byte[] classFile() throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0); // minor version
+            out.writeShort(52); // major version: Java 8
+
+            out.writeShort(nextConstant);
+            utf8(out, className);                              // 1
+            classRef(out, 1);                                  // 2: THIS_CLASS
+            utf8(out, "java/lang/Object");                     // 3
+            classRef(out, 3);                                  // 4: OBJECT_CLASS
+            utf8(out, "expressivo/Evaluator");                 // 5
+            classRef(out, 5);                                  // 6: EVALUATOR_CLASS
+            utf8(out, "<init>");                               // 7: INIT_NAME
+            utf8(out, "()V");                                  // 8: INIT_DESCRIPTOR
+            out.writeByte(12);                                 // 9: CONSTANT_NameAndType
+            out.writeShort(INIT_NAME);
+            out.writeShort(INIT_DESCRIPTOR);
+            out.writeByte(10);                                 // 10: OBJECT_INIT, CONSTANT_Methodref
+            out.writeShort(OBJECT_CLASS);
+            out.writeShort(9);
+            utf8(out, "Code");                                 // 11: CODE
+            utf8(out, "eval");                                 // 12: EVAL_NAME
+            utf8(out, "([D)D");                                // 13: EVAL_DESCRIPTOR
+            constantBytes.writeTo(out);                        // FIRST_FREE_CONSTANT...
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(THIS_CLASS);
+            out.writeShort(OBJECT_CLASS);
+            out.writeShort(1); // interfaces
+            out.writeShort(EVALUATOR_CLASS);
+            out.writeShort(0); // fields
+
+            out.writeShort(2); // methods
+            final byte[] init = { (byte) ALOAD_0, (byte) INVOKESPECIAL, 0, OBJECT_INIT, (byte) RETURN };
+            method(out, INIT_NAME, INIT_DESCRIPTOR, 1, 1, init);
+            method(out, EVAL_NAME, EVAL_DESCRIPTOR, maxDepth, 2, code.toByteArray());
+
+            out.writeShort(0); // class attributes
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static void method(DataOutputStream out, int name, int descriptor,
+                int maxStack, int maxLocals, byte[] body) throws IOException {
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1); // attributes: Code
+            out.writeShort(CODE);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // code attributes
+        }
+
+        private static void utf8(DataOutputStream out, String value) throws IOException {
+            out.writeByte(1); // CONSTANT_Utf8
+            out.writeUTF(value);
+        }
+
+        private static void classRef(DataOutputStream out, int name) throws IOException {
+            out.writeByte(7); // CONSTANT_Class
+            out.writeShort(name);
+        }
+    }
+}
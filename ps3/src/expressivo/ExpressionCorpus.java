@@ -0,0 +1,101 @@
+package expressivo;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Loads newline-delimited files of expressions, one expression per line.
+ * 
+ * <p>The file is memory-mapped and scanned for line boundaries as raw bytes, and each
+ * line is parsed from its bytes through a {@link ByteBufferCharStream}, so lines are
+ * never decoded into heap strings; only the tokens that become Variable names are. Files larger than 2 GB, the
+ * limit of a single mapping, are mapped one window at a time; every window starts at
+ * the beginning of a line.
+ * 
+ * <p>Corpora must be ASCII, like the grammar. Lines may end with "\n" or "\r\n", and
+ * empty lines are skipped.
+ */
+public final class ExpressionCorpus {
+    
+    private static final int WINDOW_SIZE = 1 << 30;
+    
+    private ExpressionCorpus() {
+        // static utility, not instantiable
+    }
+    
+    /**
+     * Parse every expression of a corpus, in file order.
+     * @param file corpus to load
+     * @param mode parser implementation to use
+     * @param action receives each expression, in file order
+     * @return number of expressions parsed
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is not a valid expression; its message
+     *         starts with the line number, counting from 1
+     */
+    public static long forEach(Path file, ParseMode mode, Consumer<? super Expression> action) throws IOException {
+        return forEach(file, mode, action, WINDOW_SIZE);
+    }
+    
+    /**
+     * Parse every expression of a corpus, mapping at most windowSize bytes at a time.
+     * @param windowSize maximum number of bytes to map at once; must exceed the longest line
+     * @see #forEach(Path, ParseMode, Consumer)
+     */
+    static long forEach(Path file, ParseMode mode, Consumer<? super Expression> action, int windowSize) throws IOException {
+        final ByteBufferCharStream line = new ByteBufferCharStream(file.toString());
+        long lineNumber = 0;
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                final int length = (int) Math.min(windowSize, size - position);
+                final boolean last = position + length == size;
+                final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int start = 0;
+                for (int i = 0; i <= length; i++) {
+                    final boolean endOfLine = i < length ? window.get(i) == '\n' : last && start < length;
+                    if (!endOfLine) {
+                        continue;
+                    }
+                    lineNumber++;
+                    int end = i;
+                    if (end > start && window.get(end - 1) == '\r') {
+                        end--;
+                    }
+                    if (end > start) {
+                        line.reset(window, start, end);
+                        action.accept(parse(line, mode, lineNumber));
+                        count++;
+                    }
+                    start = i + 1;
+                }
+                if (!last && start == 0) {
+                    throw new IOException("line " + (lineNumber + 1) + " is longer than " + windowSize + " bytes");
+                }
+                position += last ? length : start;
+            }
+        }
+        return count;
+    }
+    
+    private static Expression parse(ByteBufferCharStream line, ParseMode mode, long lineNumber) {
+        try {
+            switch (mode) {
+            case ANTLR:
+                return ExpressionParserPool.shared().parse(line);
+            case FLATTENED:
+                return RecursiveDescentParser.parseFlat(line);
+            default:
+                return RecursiveDescentParser.parse(line);
+            }
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("line " + lineNumber + ": " + iae.getMessage(), iae);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package expressivo;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Hash-consing factory for expressions.
+ *
+ * <p>A factory keeps one canonical instance of every structurally-distinct expression it
+ * has built that is still reachable. Expressions built by the same factory are therefore
+ * equal if and only if they are the same object, and identical subexpressions are shared,
+ * so trees built here are compact DAGs. Canonical instances are only weakly referenced by
+ * the factory and are reclaimed once the rest of the program drops them.
+ *
+ * <p>The intern table is split into independently-locked stripes, so threads building
+ * unrelated expressions rarely wait on each other.
+ */
+public final class ExpressionFactory {
+
+    private static final ExpressionFactory SHARED = new ExpressionFactory();
+    private static final int STRIPES = 16; // must be a power of two
+
+    // stripe i holds the canonical expressions whose spread hash selects i;
+    // each maps a canonical expression to a weak reference to itself
+    private final Map<Expression, WeakReference<Expression>>[] stripes;
+
+    /**
+     * Make a new factory with an empty intern table.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // arrays of a generic type must be created raw
+    public ExpressionFactory() {
+        stripes = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new WeakHashMap<>();
+        }
+    }
+
+    /**
+     * @return a factory shared by the whole program
+     */
+    public static ExpressionFactory shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param value a nonnegative number
+     * @return the canonical expression for value
+     */
+    public Expression number(double value) {
+        return canonical(Number.of(value));
+    }
+
+    /**
+     * @param name a case-sensitive nonempty string of letters
+     * @return the canonical expression for the variable name
+     */
+    public Expression variable(String name) {
+        return canonical(new Variable(name));
+    }
+
+    /**
+     * @param left an expression built by this factory
+     * @param right an expression built by this factory
+     * @return the canonical expression for left + right
+     */
+    public Expression sum(Expression left, Expression right) {
+        return canonical(new Sum(left, right));
+    }
+
+    /**
+     * @param left an expression built by this factory
+     * @param right an expression built by this factory
+     * @return the canonical expression for left * right
+     */
+    public Expression product(Expression left, Expression right) {
+        return canonical(new Product(left, right));
+    }
+
+    /**
+     * @param expression any expression
+     * @return the canonical expression equal to expression, with every subexpression
+     *         replaced by its canonical instance
+     */
+    public Expression intern(Expression expression) {
+        return ExpressionWalker.walk(expression, new ExpressionVisitor<Expression>() {
+            @Override public Expression visitNumber(Number number) {
+                return canonical(number);
+            }
+            @Override public Expression visitVariable(Variable variable) {
+                return canonical(variable);
+            }
+            @Override public Expression visitSum(Sum sum, Expression left, Expression right) {
+                return sum(left, right);
+            }
+            @Override public Expression visitProduct(Product product, Expression left, Expression right) {
+                return product(left, right);
+            }
+            @Override public Expression visitNarySum(NarySum sum, List<Expression> terms) {
+                final NarySum.Builder rebuilt = new NarySum.Builder().add(Number.of(sum.constant()));
+                for (Expression term : terms) {
+                    rebuilt.add(term);
+                }
+                return canonical(rebuilt.build());
+            }
+            @Override public Expression visitNaryProduct(NaryProduct product, List<Expression> factors) {
+                final NaryProduct.Builder rebuilt = new NaryProduct.Builder().multiply(Number.of(product.coefficient()));
+                for (Expression factor : factors) {
+                    rebuilt.multiply(factor);
+                }
+                return canonical(rebuilt.build());
+            }
+        });
+    }
+
+    /**
+     * Differentiate an expression, building the derivative from canonical nodes.
+     * Each distinct subexpression is differentiated only once, and the derivative shares
+     * the subexpressions it copies from the input, so repeated differentiation grows a DAG
+     * instead of duplicating subtrees. A subexpression whose variable mask (see
+     * SymbolTable.mask) rules out the variable is not walked at all: its derivative is 0.
+     * @param expression any expression
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return the canonical expression for expression's derivative with respect to variable:
+     *         structurally equal to expression.differentiate(variable), except that the
+     *         derivative of each operation subexpression that the mask rules out is the
+     *         Number 0 instead of a tree of zero terms
+     */
+    public Expression differentiate(Expression expression, String variable) {
+        // operands of interned nodes are canonical, so the copies of them made by the
+        // product rule are canonical too
+        return ExpressionWalker.walk(intern(expression), new DifferentiationVisitor(variable) {
+            @Override public Expression shortcut(Expression node) {
+                final Expression zero = zeroIfIndependent(node);
+                return zero == null ? null : canonical(zero);
+            }
+            @Override public Expression visitNumber(Number number) {
+                return canonical(super.visitNumber(number));
+            }
+            @Override public Expression visitVariable(Variable variable) {
+                return canonical(super.visitVariable(variable));
+            }
+            @Override public Expression visitSum(Sum sum, Expression leftDiff, Expression rightDiff) {
+                return sum(leftDiff, rightDiff);
+            }
+            @Override public Expression visitProduct(Product product, Expression leftDiff, Expression rightDiff) {
+                // product rule: f'(x) * g(x) + f(x) * g'(x)
+                return sum(product(leftDiff, product.right()), product(product.left(), rightDiff));
+            }
+            @Override public Expression visitNarySum(NarySum sum, List<Expression> termDiffs) {
+                return intern(super.visitNarySum(sum, termDiffs));
+            }
+            @Override public Expression visitNaryProduct(NaryProduct product, List<Expression> factorDiffs) {
+                return intern(super.visitNaryProduct(product, factorDiffs));
+            }
+        });
+    }
+
+    /**
+     * @param candidate an expression whose children, if any, are already canonical
+     * @return the canonical instance equal to candidate, which becomes canonical if there was none
+     */
+    private Expression canonical(Expression candidate) {
+        final int h = candidate.hashCode();
+        final Map<Expression, WeakReference<Expression>> stripe = stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+        synchronized (stripe) {
+            final WeakReference<Expression> ref = stripe.get(candidate);
+            final Expression existing = ref == null ? null : ref.get();
+            if (existing != null) {
+                return existing;
+            }
+            stripe.put(candidate, new WeakReference<>(candidate));
+            return candidate;
+        }
+    }
+}
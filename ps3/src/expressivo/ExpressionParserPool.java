@@ -0,0 +1,217 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import expressivo.parser.ExpressionLexer;
+import expressivo.parser.ExpressionParser;
+
+/**
+ * Thread-safe source of reusable ANTLR parsers for expressions.
+ *
+ * <p>Each thread that parses through a pool gets its own lexer, token stream and parser,
+ * created once and reset with setInputStream/setTokenSource for every subsequent parse,
+ * so a parse allocates only the tokens and parse tree for its input. After parsing an
+ * input longer than 64K characters, the character and token buffers are dropped rather
+ * than kept at that size for the life of the thread.
+ *
+ * <p>Parsing is two-stage: the input is first parsed with fast SLL prediction and a
+ * bail-out error strategy, and only if that fails is it re-parsed with full LL prediction
+ * and error reporting. For this grammar SLL always succeeds on valid input, so the LL stage
+ * only runs to produce the error for invalid input.
+ *
+ * <p>All parsers share ExpressionParser's static DFA cache, which ANTLR fills lazily and
+ * guards with a lock while new states are added. {@link #warmUp()} fills it ahead of time,
+ * so that parses after startup only read the cache and never wait on each other.
+ */
+public final class ExpressionParserPool {
+
+    private static final ExpressionParserPool SHARED = new ExpressionParserPool();
+
+    // exercises every decision of the grammar: each alternative of primitive, loops of
+    // length zero, one and many, nesting, and the error paths
+    private static final List<String> WARM_UP_CORPUS = Arrays.asList(
+            "1", "x", "(x)", "1.5 + x", "x * y", "x + y + z", "x * y * z", "(x + 1) * (y + 2.0)",
+            "x * y + z * (w + 3) * 4 + ((v))", "3 x", "x +", "(x", "x)", "* x");
+
+    private final ThreadLocal<ReusableParser> parsers = new ThreadLocal<ReusableParser>() {
+        @Override protected ReusableParser initialValue() {
+            return new ReusableParser();
+        }
+    };
+
+    /**
+     * Make a new pool. Parser instances are never shared between pools, but the DFA cache is.
+     */
+    public ExpressionParserPool() {
+    }
+
+    /**
+     * @return the pool used by Expression.parse
+     */
+    public static ExpressionParserPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Parse an expression using the calling thread's parser.
+     * @param input expression to parse, as defined in the PS3 handout.
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public Expression parse(String input) {
+        return parsers.get().parse(input);
+    }
+
+    /**
+     * Parse an expression from a character stream using the calling thread's parser,
+     * without copying the stream's characters.
+     * @param input expression to parse, as defined in the PS3 handout; read from index 0
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    Expression parse(CharStream input) {
+        return parsers.get().parse(input);
+    }
+
+    /**
+     * Fill the shared prediction DFA by parsing a built-in corpus that exercises every
+     * decision of the grammar. Intended to be called once at startup.
+     */
+    public void warmUp() {
+        warmUp(WARM_UP_CORPUS);
+    }
+
+    /**
+     * Fill the shared prediction DFA by parsing sample inputs, for example a sample of
+     * production traffic. Invalid samples are ignored.
+     * @param samples inputs to parse and discard
+     */
+    public void warmUp(Iterable<String> samples) {
+        for (String sample : samples) {
+            try {
+                parse(sample);
+            } catch (IllegalArgumentException iae) {
+                // error paths are worth warming too
+            }
+        }
+    }
+
+    /**
+     * Lexer, token stream and parser owned by a single thread.
+     */
+    private static final class ReusableParser {
+        // buffers grown past this are dropped after the parse, not pinned by the thread
+        private static final int MAX_RETAINED_CHARS = 1 << 16;
+
+        private final ReusableInputStream stream = new ReusableInputStream();
+        private final ExpressionLexer lexer = new ExpressionLexer(stream);
+        private final ReusableTokenStream tokens = new ReusableTokenStream(lexer);
+        private final ExpressionParser parser = new ExpressionParser(tokens);
+        private final BailErrorStrategy bail = new BailErrorStrategy();
+        private final DefaultErrorStrategy report = new DefaultErrorStrategy();
+
+        ReusableParser() {
+            lexer.removeErrorListeners();
+            lexer.reportErrorsAsExceptions();
+            parser.removeErrorListeners();
+            parser.reportErrorsAsExceptions();
+        }
+
+        Expression parse(String input) {
+            stream.load(input);
+            return parse(stream);
+        }
+
+        Expression parse(CharStream input) {
+            try {
+                reset(input);
+                parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+                parser.setErrorHandler(bail);
+                try {
+                    return Expression.buildExpressionFromParseTree(parser.root());
+                } catch (ParseCancellationException sllFailed) {
+                    // fall through to the second stage
+                }
+                reset(input);
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                parser.setErrorHandler(report);
+                return Expression.buildExpressionFromParseTree(parser.root());
+            } catch (ParseCancellationException pce) {
+                throw new IllegalArgumentException(pce.getMessage(), pce);
+            } finally {
+                if (input.size() > MAX_RETAINED_CHARS) {
+                    stream.release();
+                    tokens.release();
+                }
+            }
+        }
+
+        private void reset(CharStream input) {
+            input.seek(0);
+            lexer.setInputStream(input);
+            tokens.setTokenSource(lexer);
+            parser.setInputStream(tokens);
+        }
+    }
+
+    /**
+     * ANTLRInputStream whose character buffer is reused across inputs.
+     */
+    private static final class ReusableInputStream extends ANTLRInputStream {
+        ReusableInputStream() {
+            super("");
+        }
+
+        void load(String input) {
+            n = input.length();
+            if (data.length < n) {
+                data = new char[Math.max(n, 2 * data.length)];
+            }
+            input.getChars(0, n, data, 0);
+            p = 0;
+        }
+
+        /**
+         * Drop the character buffer, leaving the stream empty.
+         */
+        void release() {
+            data = new char[0];
+            n = 0;
+            p = 0;
+        }
+    }
+
+    /**
+     * CommonTokenStream that can be fully reset; BufferedTokenStream.setTokenSource
+     * leaves fetchedEOF set, which would make the reused stream look empty.
+     */
+    private static final class ReusableTokenStream extends CommonTokenStream {
+        ReusableTokenStream(TokenSource tokenSource) {
+            super(tokenSource);
+        }
+
+        @Override public void setTokenSource(TokenSource tokenSource) {
+            super.setTokenSource(tokenSource);
+            fetchedEOF = false;
+        }
+
+        /**
+         * Drop the token buffer, which clearing would leave at its largest capacity.
+         */
+        void release() {
+            tokens = new ArrayList<>();
+            setTokenSource(getTokenSource());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package expressivo;
+
+import java.util.List;
+
+/**
+ * A bottom-up computation over the nodes of an expression, driven by
+ * {@link ExpressionWalker#walk(Expression, ExpressionVisitor)}.
+ * Each visit method receives the node and the results already computed for its operands.
+ * 
+ * @param <R> type of the result computed for each node
+ */
+interface ExpressionVisitor<R> {
+    
+    /**
+     * @param number a number node
+     * @return result for number
+     */
+    R visitNumber(Number number);
+    
+    /**
+     * @param variable a variable node
+     * @return result for variable
+     */
+    R visitVariable(Variable variable);
+    
+    /**
+     * @param sum a sum node
+     * @param left result for sum.left()
+     * @param right result for sum.right()
+     * @return result for sum
+     */
+    R visitSum(Sum sum, R left, R right);
+    
+    /**
+     * @param product a product node
+     * @param left result for product.left()
+     * @param right result for product.right()
+     * @return result for product
+     */
+    R visitProduct(Product product, R left, R right);
+    
+    /**
+     * @param sum a flat sum node
+     * @param terms results for the non-constant terms of sum, in order
+     * @return result for sum
+     */
+    R visitNarySum(NarySum sum, List<R> terms);
+    
+    /**
+     * @param product a flat product node
+     * @param factors results for the non-constant factors of product, in order
+     * @return result for product
+     */
+    R visitNaryProduct(NaryProduct product, List<R> factors);
+    
+    /**
+     * Called on an operation node (Sum, Product, NarySum or NaryProduct) before its
+     * operands are visited, so that a visitor can answer for a whole subtree at once.
+     * @param node an operation node
+     * @return result for node, in which case its operands are not visited and no visit
+     *         method is called for it; or null to visit node as usual
+     */
+    default R shortcut(Expression node) {
+        return null;
+    }
+}
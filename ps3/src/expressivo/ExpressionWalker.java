@@ -0,0 +1,484 @@
+package expressivo;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Iterative drivers for whole-tree operations on expressions.
+ * 
+ * <p>Every traversal here keeps its pending work on an explicit heap-allocated stack
+ * instead of the thread's call stack, so it runs in time linear in the size of the
+ * expression and handles arbitrarily deep trees, such as the left-nested chains built
+ * for long sums, without StackOverflowError.
+ */
+final class ExpressionWalker {
+    
+    // marks, on the work stack, that the node below it has had its operands visited
+    private static final Object COMBINE = new Object();
+    
+    private ExpressionWalker() {
+        // static utility, not instantiable
+    }
+    
+    /**
+     * Compute a result for an expression bottom-up. Each distinct operation node is visited
+     * once, so subexpressions shared within a DAG are not recomputed.
+     * @param expression root of the traversal
+     * @param visitor computation to run at each node
+     * @return visitor's result for expression
+     */
+    static <R> R walk(Expression expression, ExpressionVisitor<R> visitor) {
+        final Map<Expression, R> done = new IdentityHashMap<>();
+        final Deque<Object> work = new ArrayDeque<>();
+        final List<R> results = new ArrayList<>();
+        work.push(expression);
+        while (!work.isEmpty()) {
+            final Object next = work.pop();
+            if (next == COMBINE) {
+                final Expression node = (Expression) work.pop();
+                final R result;
+                if (node instanceof Sum || node instanceof Product) {
+                    final R right = results.remove(results.size() - 1);
+                    final R left = results.remove(results.size() - 1);
+                    result = node instanceof Sum
+                            ? visitor.visitSum((Sum) node, left, right)
+                            : visitor.visitProduct((Product) node, left, right);
+                } else {
+                    final List<R> operands = results.subList(results.size() - operandCount(node), results.size());
+                    final List<R> copy = new ArrayList<>(operands);
+                    operands.clear();
+                    result = node instanceof NarySum
+                            ? visitor.visitNarySum((NarySum) node, copy)
+                            : visitor.visitNaryProduct((NaryProduct) node, copy);
+                }
+                done.put(node, result);
+                results.add(result);
+            } else if (isOperation(next)) {
+                if (done.containsKey(next)) {
+                    results.add(done.get(next));
+                    continue;
+                }
+                final Expression node = (Expression) next;
+                final R shortcut = visitor.shortcut(node);
+                if (shortcut != null) {
+                    done.put(node, shortcut);
+                    results.add(shortcut);
+                    continue;
+                }
+                work.push(node);
+                work.push(COMBINE);
+                for (int i = operandCount(node) - 1; i >= 0; i--) {
+                    work.push(operand(node, i));
+                }
+            } else if (next instanceof Number) {
+                results.add(visitor.visitNumber((Number) next));
+            } else if (next instanceof Variable) {
+                results.add(visitor.visitVariable((Variable) next));
+            } else {
+                throw new IllegalArgumentException("unknown expression " + next.getClass().getName());
+            }
+        }
+        return results.get(0);
+    }
+    
+    /**
+     * @param expression any expression
+     * @return the number of nodes of expression, counting each distinct operation node once
+     *         and each occurrence of a Number or Variable
+     */
+    static int nodeCount(Expression expression) {
+        final int[] count = { 0 };
+        walk(expression, new ExpressionVisitor<Void>() {
+            @Override public Void visitNumber(Number number) {
+                count[0]++;
+                return null;
+            }
+            @Override public Void visitVariable(Variable variable) {
+                count[0]++;
+                return null;
+            }
+            @Override public Void visitSum(Sum sum, Void left, Void right) {
+                count[0]++;
+                return null;
+            }
+            @Override public Void visitProduct(Product product, Void left, Void right) {
+                count[0]++;
+                return null;
+            }
+            @Override public Void visitNarySum(NarySum sum, List<Void> terms) {
+                count[0]++;
+                return null;
+            }
+            @Override public Void visitNaryProduct(NaryProduct product, List<Void> factors) {
+                count[0]++;
+                return null;
+            }
+        });
+        return count[0];
+    }
+    
+    // work items of evaluate: pop two values, push their sum or product
+    private static final Object ADD = new Object();
+    private static final Object MULTIPLY = new Object();
+    
+    /**
+     * Evaluate an expression with an explicit work stack and a primitive value stack, so
+     * that arbitrarily deep expressions evaluate without recursion or boxing. Operations
+     * are applied in the same order as simplify folds them, so the result is the value of
+     * expression.simplify(environment) whenever that is a Number.
+     * @param expression any expression
+     * @param environment has a value for every variable of expression
+     * @return value of expression with every variable replaced by its value in environment
+     * @throws IllegalArgumentException if environment is missing a variable of expression
+     */
+    static double evaluate(Expression expression, Environment environment) {
+        final Deque<Object> work = new ArrayDeque<>();
+        double[] values = new double[16];
+        int top = -1;
+        work.push(expression);
+        while (!work.isEmpty()) {
+            final Object next = work.pop();
+            if (next == ADD) {
+                top--;
+                values[top] += values[top + 1];
+                continue;
+            } else if (next == MULTIPLY) {
+                top--;
+                values[top] *= values[top + 1];
+                continue;
+            }
+            if (top + 1 == values.length) {
+                values = Arrays.copyOf(values, 2 * values.length);
+            }
+            if (next instanceof Number) {
+                values[++top] = ((Number) next).value();
+            } else if (next instanceof Variable) {
+                values[++top] = environment.require((Variable) next);
+            } else if (isOperation(next)) {
+                final Expression node = (Expression) next;
+                final Object operator = node instanceof Sum || node instanceof NarySum ? ADD : MULTIPLY;
+                // an n-ary node starts from its constant and folds in every operand;
+                // a binary node folds its right operand into its left
+                final int first;
+                if (node instanceof NarySum) {
+                    values[++top] = ((NarySum) node).constant();
+                    first = 0;
+                } else if (node instanceof NaryProduct) {
+                    values[++top] = ((NaryProduct) node).coefficient();
+                    first = 0;
+                } else {
+                    first = 1;
+                }
+                for (int i = operandCount(node) - 1; i >= 0; i--) {
+                    if (i >= first) {
+                        work.push(operator);
+                    }
+                    work.push(operand(node, i));
+                }
+            } else {
+                throw new IllegalArgumentException("unknown expression " + next.getClass().getName());
+            }
+        }
+        return values[0];
+    }
+    
+    /**
+     * Evaluate the derivative of an expression without building it, carrying each node's
+     * value and derivative together on two primitive stacks. A subexpression whose variable
+     * mask rules out the variable has derivative zero, so only its value is computed.
+     * Operations are applied in the order the derivative's own nodes would apply them, so
+     * for an expression of binary Sums and Products whose values are finite, the result is
+     * exactly expression.differentiate(variable).evaluate(environment); n-ary nodes may
+     * round differently, as they fold their constants first.
+     * @param expression any expression
+     * @param variable SymbolTable id of the variable to differentiate by, or -1 for a
+     *        variable that has no id
+     * @param environment has a value for every variable of expression
+     * @return value of expression's derivative with every variable replaced by its value
+     * @throws IllegalArgumentException if environment is missing a variable of expression
+     */
+    static double evaluateDerivative(Expression expression, int variable, Environment environment) {
+        final Deque<Object> work = new ArrayDeque<>();
+        double[] values = new double[16];
+        double[] derivatives = new double[16];
+        int top = -1;
+        work.push(expression);
+        while (!work.isEmpty()) {
+            final Object next = work.pop();
+            if (next == ADD) {
+                top--;
+                values[top] += values[top + 1];
+                derivatives[top] += derivatives[top + 1];
+                continue;
+            } else if (next == MULTIPLY) {
+                // product rule, in the order of Sum(Product(f', g), Product(f, g'))
+                top--;
+                derivatives[top] = derivatives[top] * values[top + 1] + values[top] * derivatives[top + 1];
+                values[top] *= values[top + 1];
+                continue;
+            }
+            if (top + 1 == values.length) {
+                values = Arrays.copyOf(values, 2 * values.length);
+                derivatives = Arrays.copyOf(derivatives, 2 * derivatives.length);
+            }
+            if (next instanceof Number) {
+                values[++top] = ((Number) next).value();
+                derivatives[top] = 0;
+            } else if (next instanceof Variable) {
+                values[++top] = environment.require((Variable) next);
+                derivatives[top] = ((Variable) next).id() == variable ? 1 : 0;
+            } else if (isOperation(next) && !SymbolTable.mayContain((Expression) next, variable)) {
+                values[++top] = evaluate((Expression) next, environment);
+                derivatives[top] = 0;
+            } else if (isOperation(next)) {
+                final Expression node = (Expression) next;
+                final Object operator = node instanceof Sum || node instanceof NarySum ? ADD : MULTIPLY;
+                final int first;
+                if (node instanceof NarySum) {
+                    values[++top] = ((NarySum) node).constant();
+                    derivatives[top] = 0;
+                    first = 0;
+                } else if (node instanceof NaryProduct) {
+                    values[++top] = ((NaryProduct) node).coefficient();
+                    derivatives[top] = 0;
+                    first = 0;
+                } else {
+                    first = 1;
+                }
+                for (int i = operandCount(node) - 1; i >= 0; i--) {
+                    if (i >= first) {
+                        work.push(operator);
+                    }
+                    work.push(operand(node, i));
+                }
+            } else {
+                throw new IllegalArgumentException("unknown expression " + next.getClass().getName());
+            }
+        }
+        return derivatives[0];
+    }
+    
+    /**
+     * @param root any expression
+     * @param isSum true to follow chains of sums, false to follow chains of products
+     * @return the operands of the maximal chain of sums (or products) rooted at root,
+     *         from left to right, including the constant of n-ary nodes as a Number;
+     *         just root if it is not such a sum (or product)
+     */
+    static List<Expression> chainOperands(Expression root, boolean isSum) {
+        final List<Expression> operands = new ArrayList<>();
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Expression node = pending.pop();
+            if (node instanceof Sum && isSum) {
+                pending.push(((Sum) node).right());
+                pending.push(((Sum) node).left());
+            } else if (node instanceof Product && !isSum) {
+                pending.push(((Product) node).right());
+                pending.push(((Product) node).left());
+            } else if (node instanceof NarySum && isSum) {
+                final NarySum sum = (NarySum) node;
+                pending.push(Number.of(sum.constant()));
+                for (int i = sum.termCount() - 1; i >= 0; i--) {
+                    pending.push(sum.term(i));
+                }
+            } else if (node instanceof NaryProduct && !isSum) {
+                final NaryProduct product = (NaryProduct) node;
+                pending.push(Number.of(product.coefficient()));
+                for (int i = product.factorCount() - 1; i >= 0; i--) {
+                    pending.push(product.factor(i));
+                }
+            } else {
+                operands.add(node);
+            }
+        }
+        return operands;
+    }
+    
+    /**
+     * @param node any object
+     * @return true if and only if node is a Sum, Product, NarySum or NaryProduct
+     */
+    private static boolean isOperation(Object node) {
+        return node instanceof Sum || node instanceof Product || node instanceof NarySum || node instanceof NaryProduct;
+    }
+    
+    /**
+     * @param node a Sum, Product, NarySum or NaryProduct
+     * @return the number of non-constant operands of node
+     */
+    private static int operandCount(Expression node) {
+        if (node instanceof NarySum) {
+            return ((NarySum) node).termCount();
+        } else if (node instanceof NaryProduct) {
+            return ((NaryProduct) node).factorCount();
+        }
+        return 2;
+    }
+    
+    /**
+     * @param node a Sum, Product, NarySum or NaryProduct
+     * @param i index of an operand, 0 <= i < operandCount(node)
+     * @return the i-th non-constant operand of node, from left to right
+     */
+    private static Expression operand(Expression node, int i) {
+        if (node instanceof Sum) {
+            return i == 0 ? ((Sum) node).left() : ((Sum) node).right();
+        } else if (node instanceof Product) {
+            return i == 0 ? ((Product) node).left() : ((Product) node).right();
+        } else if (node instanceof NarySum) {
+            return ((NarySum) node).term(i);
+        }
+        return ((NaryProduct) node).factor(i);
+    }
+    
+    /**
+     * @param expression expression to print
+     * @return the fully-parenthesized text of expression, as specified by Expression.toString
+     */
+    static String print(Expression expression) {
+        return print(expression, PrintMode.FULLY_PARENTHESIZED);
+    }
+    
+    /**
+     * @param expression expression to print
+     * @param mode how to parenthesize
+     * @return the text of expression
+     */
+    static String print(Expression expression, PrintMode mode) {
+        final StringBuilder text = new StringBuilder();
+        try {
+            print(expression, mode, text);
+        } catch (IOException ioe) {
+            throw new AssertionError("StringBuilder does not throw", ioe);
+        }
+        return text.toString();
+    }
+    
+    private static final int CHUNK_SIZE = 8192;
+    
+    // precedence of the operator at the root of a node; leaves bind tightest
+    private static final int SUM_PRECEDENCE = 0;
+    private static final int PRODUCT_PRECEDENCE = 1;
+    private static final int LEAF_PRECEDENCE = 2;
+    
+    /**
+     * Print an expression. Text is built in a StringBuilder: directly in out if out is
+     * one, otherwise in a buffer passed to out in chunks, so a Writer sees few calls.
+     * @param expression expression to print
+     * @param mode how to parenthesize
+     * @param out receives the text of expression
+     * @throws IOException if out fails
+     */
+    static void print(Expression expression, PrintMode mode, Appendable out) throws IOException {
+        final boolean minimal = mode == PrintMode.MINIMAL_PARENTHESES;
+        final StringBuilder text = out instanceof StringBuilder ? (StringBuilder) out : new StringBuilder(CHUNK_SIZE);
+        final Deque<Object> work = new ArrayDeque<>();
+        work.push(expression);
+        while (!work.isEmpty()) {
+            final Object next = work.pop();
+            if (text != out && text.length() >= CHUNK_SIZE) {
+                out.append(text);
+                text.setLength(0);
+            }
+            if (next instanceof String) {
+                text.append((String) next);
+            } else if (next instanceof Number) {
+                Doubles.append(text, ((Number) next).value());
+            } else if (next instanceof Variable) {
+                text.append(((Variable) next).name());
+            } else if (isOperation(next)) {
+                final Expression node = (Expression) next;
+                final int precedence = precedence(node);
+                final boolean binary = node instanceof Sum || node instanceof Product;
+                final String operator = precedence == SUM_PRECEDENCE ? " + " : " * ";
+                if (!minimal) {
+                    text.append('(');
+                    work.push(")");
+                }
+                if (node instanceof NarySum && ((NarySum) node).constant() != 0) {
+                    work.push(Doubles.toString(((NarySum) node).constant()));
+                    work.push(operator);
+                }
+                final int count = operandCount(node);
+                for (int i = count - 1; i >= 0; i--) {
+                    final Expression operand = operand(node, i);
+                    final int operandPrecedence = precedence(operand);
+                    final boolean parenthesize = minimal && (operandPrecedence < precedence
+                            || operandPrecedence == precedence
+                            && !(binary && i == 0 && operand.getClass() == node.getClass()));
+                    if (parenthesize) {
+                        work.push(")");
+                    }
+                    work.push(operand);
+                    if (parenthesize) {
+                        work.push("(");
+                    }
+                    if (i > 0) {
+                        work.push(operator);
+                    }
+                }
+                if (node instanceof NaryProduct && ((NaryProduct) node).coefficient() != 1) {
+                    Doubles.append(text, ((NaryProduct) node).coefficient()).append(operator);
+                }
+            } else {
+                throw new IllegalArgumentException("unknown expression " + next.getClass().getName());
+            }
+        }
+        if (text != out) {
+            out.append(text);
+        }
+    }
+    
+    private static int precedence(Expression node) {
+        if (node instanceof Sum || node instanceof NarySum) {
+            return SUM_PRECEDENCE;
+        } else if (node instanceof Product || node instanceof NaryProduct) {
+            return PRODUCT_PRECEDENCE;
+        }
+        return LEAF_PRECEDENCE;
+    }
+    
+    /**
+     * @param first an expression
+     * @param second an expression
+     * @return true if and only if first and second are structurally equal
+     */
+    static boolean equal(Expression first, Expression second) {
+        final Deque<Expression> work = new ArrayDeque<>();
+        work.push(first);
+        work.push(second);
+        while (!work.isEmpty()) {
+            final Expression b = work.pop();
+            final Expression a = work.pop();
+            if (a == b) {
+                continue;
+            }
+            if (a.getClass() != b.getClass() || a.hashCode() != b.hashCode()) {
+                return false;
+            }
+            if (isOperation(a)) {
+                if (a instanceof NarySum && Double.compare(((NarySum) a).constant(), ((NarySum) b).constant()) != 0
+                        || a instanceof NaryProduct
+                            && Double.compare(((NaryProduct) a).coefficient(), ((NaryProduct) b).coefficient()) != 0
+                        || operandCount(a) != operandCount(b)) {
+                    return false;
+                }
+                for (int i = operandCount(a) - 1; i >= 0; i--) {
+                    work.push(operand(a, i));
+                    work.push(operand(b, i));
+                }
+            } else if (!a.equals(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package expressivo;
+
+/**
+ * Hash mixing for expression nodes, based on the MurmurHash3 32-bit mixing steps.
+ * Combining child hashes through full avalanche mixing, with a different seed per node
+ * type, keeps hashes of structurally-different trees apart: Sum and Product of the same
+ * operands, swapped operands, and differently-grouped trees all hash differently.
+ */
+final class Hashing {
+    
+    static final int SUM_SEED = 0x2f6b1a3d;
+    static final int PRODUCT_SEED = 0x7c3e9b45;
+    static final int NARY_SUM_SEED = 0x4d1c8e27;
+    static final int NARY_PRODUCT_SEED = 0x19a5f3c1;
+    
+    private Hashing() {
+        // static utility, not instantiable
+    }
+    
+    /**
+     * @param seed distinguishes the kind of node being hashed
+     * @param left hash of the left operand
+     * @param right hash of the right operand
+     * @return well-mixed hash of the node
+     */
+    static int combine(int seed, int left, int right) {
+        int h = seed;
+        h = mixIn(h, left);
+        h = mixIn(h, right);
+        return finish(h, 2);
+    }
+    
+    /**
+     * @param h hash accumulated so far
+     * @param k next value to fold in
+     * @return the updated hash accumulator
+     */
+    static int mixIn(int h, int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        k *= 0x1b873593;
+        h ^= k;
+        h = Integer.rotateLeft(h, 13);
+        return h * 5 + 0xe6546b64;
+    }
+    
+    /**
+     * @param h hash accumulated so far
+     * @param count number of values folded in
+     * @return the final hash, with every input bit affecting every output bit
+     */
+    static int finish(int h, int count) {
+        h ^= count;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
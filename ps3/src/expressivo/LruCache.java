@@ -0,0 +1,123 @@
+package expressivo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread-safe map of computed values, bounded in both entry count and total weight, that
+ * evicts the least-recently-used entries first.
+ * 
+ * <p>The lock is held only to look up, insert and evict, never while computing a value,
+ * so a slow computation does not block lookups of other keys. Two threads that miss on
+ * the same key at once may both compute it; the later result replaces the earlier one.
+ * 
+ * @param <K> type of keys, with consistent equals and hashCode
+ * @param <V> type of values
+ */
+final class LruCache<K, V> {
+    
+    private final int maximumSize;
+    private final long maximumWeight;
+    private final ToIntFunction<? super V> weigher;
+    
+    // guarded by itself; iterates from least- to most-recently used
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0; // guarded by entries
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    /**
+     * Make an empty cache.
+     * @param maximumSize maximum number of entries, positive
+     * @param maximumWeight maximum total weight of the entries, positive
+     * @param weigher weight of each value, nonnegative; values heavier than maximumWeight
+     *        are returned but never stored
+     */
+    LruCache(int maximumSize, long maximumWeight, ToIntFunction<? super V> weigher) {
+        if (maximumSize <= 0 || maximumWeight <= 0) {
+            throw new IllegalArgumentException("cache bounds must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+    
+    /**
+     * Look up a value, computing and storing it on a miss.
+     * @param key key to look up
+     * @param compute computes the value of key; must not return null
+     * @return the value stored for key, or compute's value for it
+     */
+    V get(K key, Function<? super K, ? extends V> compute) {
+        synchronized (entries) {
+            final Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                return entry.value;
+            }
+        }
+        misses.increment();
+        final V value = compute.apply(key);
+        final int valueWeight = weigher.applyAsInt(value);
+        if (valueWeight > maximumWeight) {
+            return value;
+        }
+        synchronized (entries) {
+            final Entry<V> replaced = entries.put(key, new Entry<>(value, valueWeight));
+            weight += valueWeight - (replaced == null ? 0 : replaced.weight);
+            final Iterator<Entry<V>> eldest = entries.values().iterator();
+            while (entries.size() > maximumSize || weight > maximumWeight) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        return value;
+    }
+    
+    /** @return number of entries stored */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    /** @return total weight of the entries stored */
+    long weight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+    
+    /** Remove every entry, keeping the counters. */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+    
+    /** @return the current values of the hit, miss and eviction counters */
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+    
+    /**
+     * A stored value and its weight.
+     */
+    private static final class Entry<V> {
+        final V value;
+        final int weight;
+        
+        Entry(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
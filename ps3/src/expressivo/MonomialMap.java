@@ -0,0 +1,167 @@
+package expressivo;
+
+import java.util.Arrays;
+
+/**
+ * Mutable map from monomials to coefficients, with open addressing and linear probing
+ * over parallel primitive arrays: no entry objects and no boxed coefficients.
+ * 
+ * <p>A monomial is an int[] of (variable id, exponent) pairs, sorted by id, with every
+ * exponent positive; the constant monomial is the empty array. Keys are compared by
+ * content and must not be modified once added. Coefficients are only ever added to, so
+ * the map supports no removal; entries whose coefficient is 0 are never stored.
+ */
+final class MonomialMap {
+    
+    private static final int[] EMPTY = {};
+    private static final int MAX_CAPACITY = 1 << 30; // largest power-of-two array length
+    // presizing is only a hint, so an overestimate must not allocate more than this up front
+    private static final int MAX_INITIAL_CAPACITY = 1 << 20;
+    
+    // slot i is free if keys[i] == null; capacity is a power of two, at most half full
+    private int[][] keys;
+    private int[] hashes;
+    private double[] coefficients;
+    private int size = 0;
+    
+    /**
+     * Make an empty map.
+     * @param expectedSize number of monomials the map should hold without resizing; only a
+     *        hint, the map grows as needed and its initial capacity is capped
+     */
+    MonomialMap(int expectedSize) {
+        int capacity = 4;
+        while (capacity < MAX_INITIAL_CAPACITY && capacity < 2L * expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity][];
+        hashes = new int[capacity];
+        coefficients = new double[capacity];
+    }
+    
+    /** @return the constant monomial */
+    static int[] constant() {
+        return EMPTY;
+    }
+    
+    /**
+     * @param monomial a monomial
+     * @return hash of monomial's contents
+     */
+    static int hash(int[] monomial) {
+        int h = 0x6a09e667;
+        for (int k : monomial) {
+            h = Hashing.mixIn(h, k);
+        }
+        return Hashing.finish(h, monomial.length);
+    }
+    
+    /** @return number of monomials with a nonzero coefficient */
+    int size() {
+        return size;
+    }
+    
+    /** @return number of slots, for iteration with keyAt and coefficientAt */
+    int capacity() {
+        return keys.length;
+    }
+    
+    /**
+     * @param slot index of a slot, 0 <= slot < capacity()
+     * @return the monomial in slot, or null if the slot is free
+     */
+    int[] keyAt(int slot) {
+        return keys[slot];
+    }
+    
+    /**
+     * @param slot index of an occupied slot
+     * @return the coefficient of the monomial in slot
+     */
+    double coefficientAt(int slot) {
+        return coefficients[slot];
+    }
+    
+    /**
+     * @param slot index of an occupied slot
+     * @return the hash of the monomial in slot
+     */
+    int hashAt(int slot) {
+        return hashes[slot];
+    }
+    
+    /**
+     * @param monomial a monomial
+     * @return the coefficient of monomial, 0 if it has none
+     */
+    double get(int[] monomial) {
+        final int slot = find(monomial, hash(monomial));
+        return keys[slot] == null ? 0 : coefficients[slot];
+    }
+    
+    /**
+     * Add to the coefficient of a monomial.
+     * @param monomial a monomial, not modified afterwards
+     * @param coefficient amount to add; ignored if 0
+     */
+    void add(int[] monomial, double coefficient) {
+        add(monomial, hash(monomial), coefficient);
+    }
+    
+    /**
+     * Add to the coefficient of a monomial whose hash is known.
+     * @param monomial a monomial, not modified afterwards
+     * @param hash hash(monomial)
+     * @param coefficient amount to add; ignored if 0
+     */
+    void add(int[] monomial, int hash, double coefficient) {
+        if (coefficient == 0) {
+            return;
+        }
+        int slot = find(monomial, hash);
+        if (keys[slot] != null) {
+            coefficients[slot] += coefficient;
+            return;
+        }
+        if (size + 1 > keys.length / 2) {
+            grow();
+            slot = find(monomial, hash);
+        }
+        keys[slot] = monomial;
+        hashes[slot] = hash;
+        coefficients[slot] = coefficient;
+        size++;
+    }
+    
+    /**
+     * @return the slot holding monomial, or the free slot where it belongs
+     */
+    private int find(int[] monomial, int hash) {
+        final int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null && (hashes[slot] != hash || !Arrays.equals(keys[slot], monomial))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private void grow() {
+        if (keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("too many monomials: " + size);
+        }
+        final int[][] oldKeys = keys;
+        final int[] oldHashes = hashes;
+        final double[] oldCoefficients = coefficients;
+        keys = new int[2 * oldKeys.length][];
+        hashes = new int[keys.length];
+        coefficients = new double[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                final int slot = find(oldKeys[i], oldHashes[i]);
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                coefficients[slot] = oldCoefficients[i];
+            }
+        }
+    }
+}
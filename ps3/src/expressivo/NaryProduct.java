@@ -0,0 +1,161 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable data type representing the product of any number of expressions, stored flat.
+ * 
+ * <p>A chain of products such as 2 * x * y * 3, which the binary representation stores as
+ * a left-nested spine of Product nodes, is stored here as one node holding its factors in
+ * an array, with all numeric constants folded into a single coefficient.
+ * 
+ * <p>Structural equality: a NaryProduct equals only another NaryProduct with equal factors
+ * in the same order and the same coefficient. It is never equal to a binary Product.
+ * toString prints the coefficient if it is not 1, followed by the factors in order, as
+ * "(6.0 * x * y)"; parsing that text with ParseMode.FLATTENED returns an equal NaryProduct.
+ * Because constants are folded, evaluation may round differently from the binary form.
+ * 
+ * Abstraction Function (AF):
+ *   AF(factors, coefficient) = coefficient * factors[0] * ... * factors[factors.length - 1]
+ * 
+ * Representation Invariant (RI):
+ *   factors is non-empty and contains no null, Number, or NaryProduct
+ *   factors.length >= 2 or coefficient != 1
+ *   coefficient >= 0
+ *   variables is the bitwise or of SymbolTable.mask(factor) for every factor of factors
+ *   hashCode is the hash of factors and coefficient, as computed in the constructor
+ * 
+ * Safety from rep exposure:
+ *   All fields are private and final, factors is copied by the builder and never returned.
+ */
+public class NaryProduct implements Expression {
+    private final Expression[] factors;
+    private final double coefficient;
+    private final int hashCode;
+    private final long variables;
+    
+    private void checkRep() {
+        assert factors.length >= 1 : "Product must have a factor";
+        assert factors.length >= 2 || coefficient != 1 : "Single-factor product must have a coefficient";
+        assert coefficient >= 0 : "Coefficient must be nonnegative";
+        for (Expression factor : factors) {
+            assert factor != null && !(factor instanceof Number) && !(factor instanceof NaryProduct)
+                    : "Factors must be non-constant and not nested products";
+        }
+    }
+    
+    private NaryProduct(Expression[] factors, double coefficient) {
+        this.factors = factors;
+        this.coefficient = coefficient;
+        int h = Hashing.mixIn(Hashing.NARY_PRODUCT_SEED, Double.hashCode(coefficient));
+        long mask = 0;
+        for (Expression factor : factors) {
+            h = Hashing.mixIn(h, factor.hashCode());
+            mask |= SymbolTable.mask(factor);
+        }
+        this.variables = mask;
+        this.hashCode = Hashing.finish(h, factors.length + 1);
+        checkRep();
+    }
+    
+    /**
+     * Accumulates the factors of a product, folding constants and flattening nested products.
+     */
+    public static final class Builder {
+        private Expression[] factors = new Expression[4];
+        private int size = 0;
+        private double coefficient = 1;
+        
+        /**
+         * @param factor expression to multiply the product by
+         * @return this builder
+         */
+        public Builder multiply(Expression factor) {
+            if (factor instanceof Number) {
+                coefficient *= ((Number) factor).value();
+            } else if (factor instanceof NaryProduct) {
+                final NaryProduct product = (NaryProduct) factor;
+                for (Expression inner : product.factors) {
+                    append(inner);
+                }
+                coefficient *= product.coefficient;
+            } else {
+                append(factor);
+            }
+            return this;
+        }
+        
+        private void append(Expression factor) {
+            if (size == factors.length) {
+                factors = Arrays.copyOf(factors, 2 * size);
+            }
+            factors[size++] = factor;
+        }
+        
+        /**
+         * @return the product of the factors so far: a Number if they were all constants,
+         *         the single factor if there was one and a coefficient of 1, else a NaryProduct
+         */
+        public Expression build() {
+            if (size == 0) {
+                return Number.of(coefficient);
+            } else if (size == 1 && coefficient == 1) {
+                return factors[0];
+            }
+            return new NaryProduct(Arrays.copyOf(factors, size), coefficient);
+        }
+    }
+    
+    /** @return mask of the variables of this expression, as defined by SymbolTable.mask */
+    long variables() {
+        return variables;
+    }
+    
+    /** @return the number of non-constant factors */
+    int factorCount() {
+        return factors.length;
+    }
+    
+    /**
+     * @param i index of a factor, 0 <= i < factorCount()
+     * @return the i-th non-constant factor
+     */
+    Expression factor(int i) {
+        return factors[i];
+    }
+    
+    /** @return the product of the constant factors */
+    double coefficient() {
+        return coefficient;
+    }
+    
+    @Override
+    public String toString() {
+        return ExpressionWalker.print(this);
+    }
+    
+    @Override
+    public boolean equals(Object thatObject) {
+        if (this == thatObject) return true;
+        if (!(thatObject instanceof NaryProduct)) return false;
+        NaryProduct that = (NaryProduct) thatObject;
+        if (this.hashCode != that.hashCode) return false;
+        return ExpressionWalker.equal(this, that);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+    
+    @Override
+    public Expression differentiate(String variable) {
+        return ExpressionWalker.walk(this, new DifferentiationVisitor(variable));
+    }
+    
+    @Override
+    public Expression simplify(Map<String, Double> environment) {
+        return ExpressionWalker.walk(this, new SubstitutionVisitor(environment));
+    }
+}
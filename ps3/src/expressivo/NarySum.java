@@ -0,0 +1,162 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable data type representing the sum of any number of expressions, stored flat.
+ * 
+ * <p>A chain of sums such as x + y + 2 + z, which the binary representation stores as
+ * a left-nested spine of Sum nodes, is stored here as one node holding its terms in an
+ * array, with all numeric constants folded into a single constant term.
+ * 
+ * <p>Structural equality: a NarySum equals only another NarySum with equal terms in the
+ * same order and the same constant. It is never equal to a binary Sum, even when both
+ * denote the same sum, just as a Sum never equals the same Sum with its operands swapped.
+ * toString prints the terms in order, followed by the constant if it is nonzero, as
+ * "(x + y + z + 2.0)"; parsing that text with ParseMode.FLATTENED returns an equal NarySum.
+ * Because constants are folded, evaluation may round differently from the binary form.
+ * 
+ * Abstraction Function (AF):
+ *   AF(terms, constant) = terms[0] + ... + terms[terms.length - 1] + constant
+ * 
+ * Representation Invariant (RI):
+ *   terms is non-empty and contains no null, Number, or NarySum
+ *   terms.length >= 2 or constant != 0
+ *   constant >= 0
+ *   variables is the bitwise or of SymbolTable.mask(term) for every term of terms
+ *   hashCode is the hash of terms and constant, as computed in the constructor
+ * 
+ * Safety from rep exposure:
+ *   All fields are private and final, terms is copied by the builder and never returned.
+ */
+public class NarySum implements Expression {
+    private final Expression[] terms;
+    private final double constant;
+    private final int hashCode;
+    private final long variables;
+    
+    private void checkRep() {
+        assert terms.length >= 1 : "Sum must have a term";
+        assert terms.length >= 2 || constant != 0 : "Single-term sum must have a constant";
+        assert constant >= 0 : "Constant must be nonnegative";
+        for (Expression term : terms) {
+            assert term != null && !(term instanceof Number) && !(term instanceof NarySum)
+                    : "Terms must be non-constant and not nested sums";
+        }
+    }
+    
+    private NarySum(Expression[] terms, double constant) {
+        this.terms = terms;
+        this.constant = constant;
+        int h = Hashing.mixIn(Hashing.NARY_SUM_SEED, Double.hashCode(constant));
+        long mask = 0;
+        for (Expression term : terms) {
+            h = Hashing.mixIn(h, term.hashCode());
+            mask |= SymbolTable.mask(term);
+        }
+        this.variables = mask;
+        this.hashCode = Hashing.finish(h, terms.length + 1);
+        checkRep();
+    }
+    
+    /**
+     * Accumulates the terms of a sum, folding constants and flattening nested sums.
+     */
+    public static final class Builder {
+        private Expression[] terms = new Expression[4];
+        private int size = 0;
+        private double constant = 0;
+        
+        /**
+         * @param term expression to add to the sum
+         * @return this builder
+         */
+        public Builder add(Expression term) {
+            if (term instanceof Number) {
+                constant += ((Number) term).value();
+            } else if (term instanceof NarySum) {
+                final NarySum sum = (NarySum) term;
+                for (Expression inner : sum.terms) {
+                    append(inner);
+                }
+                constant += sum.constant;
+            } else {
+                append(term);
+            }
+            return this;
+        }
+        
+        private void append(Expression term) {
+            if (size == terms.length) {
+                terms = Arrays.copyOf(terms, 2 * size);
+            }
+            terms[size++] = term;
+        }
+        
+        /**
+         * @return the sum of the terms added so far: a Number if they were all constants,
+         *         the single term if there was one and no nonzero constant, else a NarySum
+         */
+        public Expression build() {
+            if (size == 0) {
+                return Number.of(constant);
+            } else if (size == 1 && constant == 0) {
+                return terms[0];
+            }
+            return new NarySum(Arrays.copyOf(terms, size), constant);
+        }
+    }
+    
+    /** @return mask of the variables of this expression, as defined by SymbolTable.mask */
+    long variables() {
+        return variables;
+    }
+    
+    /** @return the number of non-constant terms */
+    int termCount() {
+        return terms.length;
+    }
+    
+    /**
+     * @param i index of a term, 0 <= i < termCount()
+     * @return the i-th non-constant term
+     */
+    Expression term(int i) {
+        return terms[i];
+    }
+    
+    /** @return the sum of the constant terms */
+    double constant() {
+        return constant;
+    }
+    
+    @Override
+    public String toString() {
+        return ExpressionWalker.print(this);
+    }
+    
+    @Override
+    public boolean equals(Object thatObject) {
+        if (this == thatObject) return true;
+        if (!(thatObject instanceof NarySum)) return false;
+        NarySum that = (NarySum) thatObject;
+        if (this.hashCode != that.hashCode) return false;
+        return ExpressionWalker.equal(this, that);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+    
+    @Override
+    public Expression differentiate(String variable) {
+        return ExpressionWalker.walk(this, new DifferentiationVisitor(variable));
+    }
+    
+    @Override
+    public Expression simplify(Map<String, Double> environment) {
+        return ExpressionWalker.walk(this, new SubstitutionVisitor(environment));
+    }
+}
@@ -1,7 +1,14 @@
 package expressivo;
 
+import java.util.Map;
+
 /**
  * Immutable data type representing a nonnegative integer or floating-point number.
+ * 
+ * <p>Prefer Number.of(value) to the constructor: it returns a shared instance for small
+ * integers such as the 0 and 1 of every derivative leaf, and for recently made values
+ * such as the literals of a parsed expression, so equal constants are usually one object.
+ * 
  * Abstraction Function (AF):
  *   AF(value) = a nonnegative numeric constant represented by 'value'.
  * 
@@ -14,6 +21,23 @@ package expressivo;
 public class Number implements Expression {
     private final double value;
 
+    // canonical instances of 0, 1, ..., SMALL_INTEGERS - 1
+    private static final int SMALL_INTEGERS = 256;
+    private static final Number[] INTEGERS = new Number[SMALL_INTEGERS];
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+    static {
+        for (int i = 0; i < SMALL_INTEGERS; i++) {
+            INTEGERS[i] = new Number(i);
+        }
+    }
+
+    // lossy direct-mapped cache of other values: an entry is overwritten by any value that
+    // hashes to the same index. Unsynchronized: a racing write can only cost a cache miss,
+    // and the final field of a Number makes it safe to read from an entry written by
+    // another thread.
+    private static final int CACHED_VALUES = 1024; // must be a power of two
+    private static final Number[] VALUES = new Number[CACHED_VALUES];
+
     // Abstraction function and rep invariant check
     private void checkRep() {
         assert value >= 0 : "Number must be nonnegative";
@@ -24,9 +48,35 @@ public class Number implements Expression {
         checkRep();
     }
 
+    /**
+     * @param value a nonnegative number
+     * @return a Number equal to new Number(value), shared with other callers where possible
+     */
+    static Number of(double value) {
+        final int integer = (int) value;
+        // -0.0 == 0 too, but is not equal to 0 as a Number
+        if (integer == value && integer >= 0 && integer < SMALL_INTEGERS && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO) {
+            return INTEGERS[integer];
+        }
+        final long bits = Double.doubleToLongBits(value);
+        final int h = (int) (bits ^ (bits >>> 32)) * 0x9E3779B9;
+        final int index = (h ^ (h >>> 16)) & (CACHED_VALUES - 1);
+        final Number cached = VALUES[index];
+        if (cached != null && Double.doubleToLongBits(cached.value) == bits) {
+            return cached;
+        }
+        final Number made = new Number(value);
+        VALUES[index] = made;
+        return made;
+    }
+    /** @return the numeric value of this constant */
+    double value() {
+        return value;
+    }
+
     @Override
     public String toString() {
-        return String.valueOf(value);
+        return Doubles.toString(value);
     }
 
     @Override
@@ -42,6 +92,10 @@ public class Number implements Expression {
     }
     
     @Override public Expression differentiate(String variable) {
-        return new Number(0);
+        return of(0);
+    }
+
+    @Override public Expression simplify(Map<String, Double> environment) {
+        return this;
     }
 }
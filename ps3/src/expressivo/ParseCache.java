@@ -0,0 +1,150 @@
+package expressivo;
+
+/**
+ * Bounded, thread-safe cache of parsed expressions, keyed on the input text with
+ * insignificant spaces removed.
+ * 
+ * <p>Expressions are immutable, so a cached AST is returned directly, without copying.
+ * Inputs that differ only in spaces the grammar skips, such as "x+1" and " x + 1 ", share
+ * one entry. Invalid inputs are never cached: they are parsed again on every request, so
+ * that each failure is reported against the caller's own text.
+ * 
+ * <p>The cache is opt-in. {@link #enable(int)} installs a shared cache in front of
+ * {@link Expression#parse(String)}, and with it every Commands method.
+ */
+public final class ParseCache {
+    
+    private static volatile ParseCache enabled = null;
+    
+    private final LruCache<String, Expression> cache;
+    
+    /**
+     * Make an empty cache bounded only in the number of expressions it keeps, however
+     * large they are.
+     * @param capacity maximum number of expressions to keep, positive; the least recently
+     *        used expressions are evicted first
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public ParseCache(int capacity) {
+        // unbounded in nodes, so there is no need to count them
+        this.cache = new LruCache<>(capacity, Long.MAX_VALUE, expression -> 0);
+    }
+    
+    /**
+     * Make an empty cache bounded both in the number of expressions it keeps and in their
+     * total size.
+     * @param capacity maximum number of expressions to keep, positive
+     * @param maximumNodes maximum total number of nodes of the expressions kept, positive;
+     *        an expression larger than this is parsed but never kept
+     * @throws IllegalArgumentException if a bound is not positive
+     */
+    public ParseCache(int capacity, long maximumNodes) {
+        this.cache = new LruCache<>(capacity, maximumNodes, ExpressionWalker::nodeCount);
+    }
+    
+    /**
+     * Put a new shared cache in front of Expression.parse(String), replacing any previous one.
+     * @param capacity maximum number of expressions the shared cache keeps, positive; the
+     *        cache is not bounded in their total size
+     * @return the new shared cache
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public static ParseCache enable(int capacity) {
+        return install(new ParseCache(capacity));
+    }
+    
+    /**
+     * Put a new shared cache in front of Expression.parse(String), replacing any previous one.
+     * @param capacity maximum number of expressions the shared cache keeps, positive
+     * @param maximumNodes maximum total number of nodes of the expressions the shared cache
+     *        keeps, positive; an expression larger than this is parsed but never kept
+     * @return the new shared cache
+     * @throws IllegalArgumentException if a bound is not positive
+     */
+    public static ParseCache enable(int capacity, long maximumNodes) {
+        return install(new ParseCache(capacity, maximumNodes));
+    }
+    
+    private static ParseCache install(ParseCache cache) {
+        enabled = cache;
+        return cache;
+    }
+    
+    /**
+     * Stop caching in Expression.parse(String), dropping the shared cache.
+     */
+    public static void disable() {
+        enabled = null;
+    }
+    
+    /**
+     * @return the cache in front of Expression.parse(String), or null if caching is disabled
+     */
+    public static ParseCache enabled() {
+        return enabled;
+    }
+    
+    /**
+     * Parse an expression, or return the expression already parsed from the same text.
+     * @param input expression to parse, as defined in Expression.g4
+     * @return expression AST for the input, equal to the one Expression.parse would build
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public Expression parse(String input) {
+        return cache.get(normalize(input), key -> ExpressionParserPool.shared().parse(input));
+    }
+    
+    /** @return number of expressions kept */
+    public int size() {
+        return cache.size();
+    }
+    
+    /** @return hit, miss and eviction counts since this cache was made */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+    
+    /** Drop every expression kept, keeping the counters. */
+    public void clear() {
+        cache.clear();
+    }
+    
+    /**
+     * Remove the spaces that do not separate two tokens. A run of spaces between two
+     * characters that could belong to one NUMBER or VARIABLE token becomes a single space,
+     * so that inputs such as "1 2" stay distinct from "12".
+     * @param input any text
+     * @return text that lexes to the same tokens as input
+     */
+    static String normalize(String input) {
+        final int length = input.length();
+        int i = 0;
+        while (i < length && input.charAt(i) != ' ') {
+            i++;
+        }
+        if (i == length) {
+            return input; // the common case: nothing to remove
+        }
+        final StringBuilder normalized = new StringBuilder(length);
+        normalized.append(input, 0, i);
+        while (i < length) {
+            final char c = input.charAt(i++);
+            if (c != ' ') {
+                normalized.append(c);
+                continue;
+            }
+            while (i < length && input.charAt(i) == ' ') {
+                i++;
+            }
+            if (normalized.length() > 0 && i < length
+                    && isTokenChar(normalized.charAt(normalized.length() - 1)) && isTokenChar(input.charAt(i))) {
+                normalized.append(' ');
+            }
+        }
+        return normalized.toString();
+    }
+    
+    private static boolean isTokenChar(char c) {
+        return c == '.' || c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+}
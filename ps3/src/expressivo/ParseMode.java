@@ -0,0 +1,25 @@
+package expressivo;
+
+/**
+ * Selects the parser implementation used by {@link Expression#parse(CharSequence, ParseMode)}.
+ * All modes accept exactly the language of Expression.g4. ANTLR and RECURSIVE_DESCENT build
+ * structurally-equal ASTs of binary Sum and Product nodes; FLATTENED builds n-ary nodes.
+ */
+public enum ParseMode {
+    
+    /** The ANTLR-generated lexer and parser, walking the resulting parse tree. */
+    ANTLR,
+    
+    /**
+     * A hand-written single-pass recursive-descent parser that reads the input directly
+     * and builds the AST without a token list or parse tree.
+     */
+    RECURSIVE_DESCENT,
+    
+    /**
+     * The hand-written parser, building a NarySum for each chain of sums and a NaryProduct
+     * for each chain of products, with numeric constants folded. The result denotes the
+     * same polynomial as the other modes, but is not structurally equal to theirs.
+     */
+    FLATTENED
+}
@@ -0,0 +1,401 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable polynomial in canonical sparse form.
+ * 
+ * <p>Every expression denotes a polynomial with nonnegative coefficients, and two
+ * expressions denote the same polynomial exactly when they are equal as polynomials here,
+ * whatever the shape of their trees: x * y, y * x and (y * (x)) all convert to the same
+ * Polynomial. Addition, multiplication and differentiation work directly on the monomials,
+ * without building or rewriting trees.
+ * 
+ * <p>Multiplication distributes over addition, so converting a product of n sums can
+ * produce exponentially many monomials; use Simplifier for expressions of that shape.
+ * Coefficients are combined in floating point, so expressions that differ only by
+ * rounding, such as 0.1 * x + 0.2 * x and 0.3 * x, may convert to unequal polynomials.
+ * 
+ * Abstraction Function (AF):
+ *   AF(terms) = the sum over every monomial m of terms of terms.get(m) times the product,
+ *     for each (id, exponent) pair of m, of the variable named SymbolTable.name(id) raised to exponent
+ * 
+ * Representation Invariant (RI):
+ *   terms holds no zero coefficient, and is never modified after construction
+ *   hashCode is the order-independent hash of terms, as computed in the constructor
+ * 
+ * Safety from rep exposure:
+ *   All fields are private and final; terms and its monomial arrays are never returned,
+ *   and are shared only with other Polynomials, which never modify them.
+ */
+public final class Polynomial {
+    
+    private static final Polynomial ZERO = new Polynomial(new MonomialMap(0));
+    
+    private final MonomialMap terms;
+    private final int hashCode;
+    
+    private void checkRep() {
+        for (int slot = 0; slot < terms.capacity(); slot++) {
+            assert terms.keyAt(slot) == null || terms.coefficientAt(slot) != 0 : "Coefficients must be nonzero";
+        }
+    }
+    
+    private Polynomial(MonomialMap terms) {
+        this.terms = terms;
+        int h = 0;
+        for (int slot = 0; slot < terms.capacity(); slot++) {
+            if (terms.keyAt(slot) != null) {
+                h += Hashing.finish(Hashing.mixIn(terms.hashAt(slot), Double.hashCode(terms.coefficientAt(slot))), 2);
+            }
+        }
+        this.hashCode = h;
+        checkRep();
+    }
+    
+    /**
+     * @param value a nonnegative number
+     * @return the constant polynomial value
+     */
+    public static Polynomial constant(double value) {
+        final MonomialMap terms = new MonomialMap(1);
+        terms.add(MonomialMap.constant(), value);
+        return new Polynomial(terms);
+    }
+    
+    /**
+     * @param name a case-sensitive nonempty string of letters
+     * @return the polynomial name
+     * @throws IllegalArgumentException if name is not a nonempty string of letters
+     */
+    public static Polynomial variable(String name) {
+        // checked before interning, so that an invalid name never enters the symbol table
+        if (!SymbolTable.isName(name)) {
+            throw new IllegalArgumentException("not a variable name: " + name);
+        }
+        return variable(SymbolTable.intern(name));
+    }
+    
+    /**
+     * @param id a SymbolTable id
+     * @return the polynomial of the variable with that id
+     */
+    private static Polynomial variable(int id) {
+        final MonomialMap terms = new MonomialMap(1);
+        terms.add(new int[] { id, 1 }, 1);
+        return new Polynomial(terms);
+    }
+    
+    /**
+     * Convert an expression to canonical form. Each chain of sums is accumulated in one
+     * pass, and each distinct node of a DAG is converted once.
+     * @param expression any expression
+     * @return the polynomial that expression denotes
+     */
+    public static Polynomial of(Expression expression) {
+        final Map<Expression, Polynomial> done = new IdentityHashMap<>();
+        final Deque<Object> work = new ArrayDeque<>();
+        final List<Polynomial> results = new ArrayList<>();
+        work.push(expression);
+        while (!work.isEmpty()) {
+            final Object next = work.pop();
+            if (next instanceof Chain) {
+                final Chain chain = (Chain) next;
+                final List<Polynomial> operands = results.subList(results.size() - chain.length, results.size());
+                final Polynomial result = chain.isSum ? sum(operands) : product(operands);
+                operands.clear();
+                done.put(chain.root, result);
+                results.add(result);
+            } else if (next instanceof Number) {
+                results.add(constant(((Number) next).value()));
+            } else if (next instanceof Variable) {
+                results.add(variable(((Variable) next).id()));
+            } else {
+                final Expression node = (Expression) next;
+                final Polynomial known = done.get(node);
+                if (known != null) {
+                    results.add(known);
+                    continue;
+                }
+                final boolean isSum = node instanceof Sum || node instanceof NarySum;
+                if (!isSum && !(node instanceof Product || node instanceof NaryProduct)) {
+                    throw new IllegalArgumentException("unknown expression " + node.getClass().getName());
+                }
+                final List<Expression> operands = ExpressionWalker.chainOperands(node, isSum);
+                work.push(new Chain(node, isSum, operands.size()));
+                for (int i = operands.size() - 1; i >= 0; i--) {
+                    work.push(operands.get(i));
+                }
+            }
+        }
+        return results.get(0);
+    }
+    
+    /**
+     * A maximal chain of sums or of products, waiting for its operands to be converted.
+     */
+    private static final class Chain {
+        final Expression root;
+        final boolean isSum;
+        final int length;
+        
+        Chain(Expression root, boolean isSum, int length) {
+            this.root = root;
+            this.isSum = isSum;
+            this.length = length;
+        }
+    }
+    
+    /**
+     * @param first an expression
+     * @param second an expression
+     * @return true if and only if first and second denote the same polynomial
+     */
+    public static boolean equivalent(Expression first, Expression second) {
+        return of(first).equals(of(second));
+    }
+    
+    private static Polynomial sum(List<Polynomial> addends) {
+        int expectedSize = 0;
+        for (Polynomial addend : addends) {
+            expectedSize += addend.terms.size();
+        }
+        final MonomialMap terms = new MonomialMap(expectedSize);
+        for (Polynomial addend : addends) {
+            addend.addTo(terms);
+        }
+        return new Polynomial(terms);
+    }
+    
+    private static Polynomial product(List<Polynomial> factors) {
+        Polynomial product = factors.get(0);
+        for (int i = 1; i < factors.size(); i++) {
+            product = product.times(factors.get(i));
+        }
+        return product;
+    }
+    
+    /**
+     * Add every term of this polynomial to a map.
+     */
+    private void addTo(MonomialMap target) {
+        for (int slot = 0; slot < terms.capacity(); slot++) {
+            final int[] monomial = terms.keyAt(slot);
+            if (monomial != null) {
+                target.add(monomial, terms.hashAt(slot), terms.coefficientAt(slot));
+            }
+        }
+    }
+    
+    /**
+     * @param that a polynomial
+     * @return this + that
+     */
+    public Polynomial plus(Polynomial that) {
+        final MonomialMap sum = new MonomialMap(this.terms.size() + that.terms.size());
+        this.addTo(sum);
+        that.addTo(sum);
+        return new Polynomial(sum);
+    }
+    
+    /**
+     * @param that a polynomial
+     * @return this * that
+     */
+    public Polynomial times(Polynomial that) {
+        // the product has at least as many terms as the larger operand, and usually not
+        // many more; presizing for the worst case of every pair distinct can exhaust memory
+        final MonomialMap product = new MonomialMap(Math.max(this.terms.size(), that.terms.size()));
+        for (int i = 0; i < this.terms.capacity(); i++) {
+            final int[] left = this.terms.keyAt(i);
+            if (left == null) {
+                continue;
+            }
+            for (int j = 0; j < that.terms.capacity(); j++) {
+                final int[] right = that.terms.keyAt(j);
+                if (right != null) {
+                    product.add(multiply(left, right), this.terms.coefficientAt(i) * that.terms.coefficientAt(j));
+                }
+            }
+        }
+        return new Polynomial(product);
+    }
+    
+    /**
+     * @param left a monomial
+     * @param right a monomial
+     * @return the monomial left * right
+     */
+    private static int[] multiply(int[] left, int[] right) {
+        if (left.length == 0) {
+            return right;
+        } else if (right.length == 0) {
+            return left;
+        }
+        final int[] merged = new int[left.length + right.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] == right[j]) {
+                merged[k++] = left[i];
+                merged[k++] = left[i + 1] + right[j + 1];
+                i += 2;
+                j += 2;
+            } else if (left[i] < right[j]) {
+                merged[k++] = left[i++];
+                merged[k++] = left[i++];
+            } else {
+                merged[k++] = right[j++];
+                merged[k++] = right[j++];
+            }
+        }
+        while (i < left.length) {
+            merged[k++] = left[i++];
+        }
+        while (j < right.length) {
+            merged[k++] = right[j++];
+        }
+        return k == merged.length ? merged : Arrays.copyOf(merged, k);
+    }
+    
+    /**
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters
+     * @return the derivative of this polynomial with respect to variable
+     */
+    public Polynomial differentiate(String variable) {
+        final int id = SymbolTable.lookup(variable);
+        if (id < 0) {
+            return ZERO; // no polynomial mentions a variable that has no id
+        }
+        final MonomialMap derivative = new MonomialMap(terms.size());
+        for (int slot = 0; slot < terms.capacity(); slot++) {
+            final int[] monomial = terms.keyAt(slot);
+            if (monomial == null) {
+                continue;
+            }
+            for (int k = 0; k < monomial.length; k += 2) {
+                if (monomial[k] == id) {
+                    final int exponent = monomial[k + 1];
+                    final int[] reduced;
+                    if (exponent == 1) {
+                        reduced = new int[monomial.length - 2];
+                        System.arraycopy(monomial, 0, reduced, 0, k);
+                        System.arraycopy(monomial, k + 2, reduced, k, monomial.length - k - 2);
+                    } else {
+                        reduced = monomial.clone();
+                        reduced[k + 1] = exponent - 1;
+                    }
+                    derivative.add(reduced, exponent * terms.coefficientAt(slot));
+                    break;
+                }
+            }
+        }
+        return new Polynomial(derivative);
+    }
+    
+    /** @return the number of monomials with a nonzero coefficient */
+    public int termCount() {
+        return terms.size();
+    }
+    
+    /**
+     * @return the canonical expression for this polynomial: a left-nested Sum of terms,
+     *         highest degree first and in alphabetical order within a degree, each a
+     *         left-nested Product of its coefficient (omitted if 1) and its variables in
+     *         alphabetical order, one factor per power; 0 for the zero polynomial
+     */
+    public Expression toExpression() {
+        final List<String[]> factorLists = new ArrayList<>();
+        final List<Double> coefficients = new ArrayList<>();
+        for (int slot = 0; slot < terms.capacity(); slot++) {
+            final int[] monomial = terms.keyAt(slot);
+            if (monomial != null) {
+                factorLists.add(factorNames(monomial));
+                coefficients.add(terms.coefficientAt(slot));
+            }
+        }
+        final Integer[] order = new Integer[factorLists.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareMonomials(factorLists.get(a), factorLists.get(b)));
+        
+        Expression sum = null;
+        for (int i : order) {
+            final String[] factors = factorLists.get(i);
+            final double coefficient = coefficients.get(i);
+            Expression term = coefficient == 1 && factors.length > 0 ? null : Number.of(coefficient);
+            for (String factor : factors) {
+                term = term == null ? new Variable(factor) : new Product(term, new Variable(factor));
+            }
+            sum = sum == null ? term : new Sum(sum, term);
+        }
+        return sum == null ? Number.of(0) : sum;
+    }
+    
+    /**
+     * @return the variable names of monomial in alphabetical order, each repeated exponent times
+     */
+    private static String[] factorNames(int[] monomial) {
+        final List<String> names = new ArrayList<>();
+        for (int k = 0; k < monomial.length; k += 2) {
+            for (int power = 0; power < monomial[k + 1]; power++) {
+                names.add(SymbolTable.name(monomial[k]));
+            }
+        }
+        final String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+    
+    /**
+     * Order monomials by descending degree, then alphabetically by their factors.
+     */
+    private static int compareMonomials(String[] a, String[] b) {
+        if (a.length != b.length) {
+            return Integer.compare(b.length, a.length);
+        }
+        for (int i = 0; i < a.length; i++) {
+            final int c = a[i].compareTo(b[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * @return the text of toExpression()
+     */
+    @Override
+    public String toString() {
+        return toExpression().toString();
+    }
+    
+    @Override
+    public boolean equals(Object thatObject) {
+        if (this == thatObject) return true;
+        if (!(thatObject instanceof Polynomial)) return false;
+        Polynomial that = (Polynomial) thatObject;
+        if (this.hashCode != that.hashCode || this.terms.size() != that.terms.size()) return false;
+        for (int slot = 0; slot < terms.capacity(); slot++) {
+            final int[] monomial = terms.keyAt(slot);
+            if (monomial != null && that.terms.get(monomial) != terms.coefficientAt(slot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
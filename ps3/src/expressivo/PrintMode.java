@@ -0,0 +1,22 @@
+package expressivo;
+
+/**
+ * Selects how {@link Expression#appendTo(Appendable, PrintMode)} parenthesizes.
+ * In both modes, parsing the printed text builds an expression equal to the printed one:
+ * with ParseMode.ANTLR or RECURSIVE_DESCENT for binary Sum and Product trees, and with
+ * ParseMode.FLATTENED for NarySum and NaryProduct trees.
+ */
+public enum PrintMode {
+    
+    /**
+     * Every operation in parentheses, as toString prints: ((1.0 + x) * (x * 1.0)).
+     */
+    FULLY_PARENTHESIZED,
+    
+    /**
+     * Only the parentheses the grammar needs: (1.0 + x) * x * 1.0 for the same tree.
+     * A sum is parenthesized inside a product, and an operation is parenthesized as the
+     * right operand of an operation with the same operator, since both associate left.
+     */
+    MINIMAL_PARENTHESES
+}
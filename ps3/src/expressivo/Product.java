@@ -1,5 +1,7 @@
 package expressivo;
 
+import java.util.Map;
+
 /**
  * Immutable data type representing the product of two expressions.
  * Abstraction Function (AF):
@@ -7,6 +9,8 @@ package expressivo;
  * 
  * Representation Invariant (RI):
  *   left and right are non-null.
+ *   hashCode == Hashing.combine(Hashing.PRODUCT_SEED, left.hashCode(), right.hashCode())
+ *   variables == SymbolTable.mask(left) | SymbolTable.mask(right)
  * 
  * Safety from rep exposure:
  *   All fields are private, final, and immutable.
@@ -14,6 +18,8 @@ package expressivo;
 public class Product implements Expression {
     private final Expression left;
     private final Expression right;
+    private final int hashCode;
+    private final long variables;
 
     private void checkRep() {
         assert left != null : "Left expression cannot be null";
@@ -23,33 +29,52 @@ public class Product implements Expression {
     public Product(Expression left, Expression right) {
         this.left = left;
         this.right = right;
+        this.hashCode = Hashing.combine(Hashing.PRODUCT_SEED, left.hashCode(), right.hashCode());
+        this.variables = SymbolTable.mask(left) | SymbolTable.mask(right);
         checkRep();
     }
 
+    /** @return mask of the variables of this expression, as defined by SymbolTable.mask */
+    long variables() {
+        return variables;
+    }
+
+    /** @return the left operand */
+    Expression left() {
+        return left;
+    }
+
+    /** @return the right operand */
+    Expression right() {
+        return right;
+    }
+
     @Override
     public String toString() {
-        return "(" + left.toString() + " * " + right.toString() + ")";
+        return ExpressionWalker.print(this);
     }
 
     @Override
     public boolean equals(Object thatObject) {
+        if (this == thatObject) return true;
         if (!(thatObject instanceof Product)) return false;
         Product that = (Product) thatObject;
-        return this.left.equals(that.left) && this.right.equals(that.right);
+        if (this.hashCode != that.hashCode) return false;
+        return ExpressionWalker.equal(this, that);
     }
 
     @Override
     public int hashCode() {
-        return 31 * left.hashCode() + right.hashCode();
+        return hashCode;
     }
     
     @Override
     public Expression differentiate(String variable) {
-        Expression leftDiff = left.differentiate(variable); // Derivative of left operand
-        Expression rightDiff = right.differentiate(variable); // Derivative of right operand
-        // Apply product rule: f'(x) * g(x) + f(x) * g'(x)
-        Expression leftTerm = new Product(leftDiff, right);
-        Expression rightTerm = new Product(left, rightDiff);
-        return new Sum(leftTerm, rightTerm);
+        return ExpressionWalker.walk(this, new DifferentiationVisitor(variable));
+    }
+
+    @Override
+    public Expression simplify(Map<String, Double> environment) {
+        return ExpressionWalker.walk(this, new SubstitutionVisitor(environment));
     }
 }
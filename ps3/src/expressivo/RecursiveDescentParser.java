@@ -0,0 +1,229 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Hand-written lexer and parser for the grammar in Expression.g4:
+ * 
+ *   root : sum EOF;
+ *   sum : product ('+' product)*;
+ *   product : primitive ('*' primitive)*;
+ *   primitive : NUMBER | VARIABLE | '(' sum ')';
+ *   NUMBER : [0-9.]+;
+ *   VARIABLE : [A-Za-z]+;
+ *   SPACES : [ ]+ -> skip;
+ * 
+ * Tokens are recognized on the fly from the input characters and AST nodes are built as
+ * soon as each rule is recognized, so no token list or parse tree is ever materialized.
+ * Sums and products are folded to the left, exactly like the ANTLR path. Nested
+ * parentheses are tracked on an explicit stack rather than by recursion.
+ */
+final class RecursiveDescentParser {
+    
+    // largest number of significant digits whose value is exactly representable as a double
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    
+    private final CharSequence input;
+    private final int length;
+    private final boolean flat;
+    private int position;
+    
+    private RecursiveDescentParser(CharSequence input, boolean flat) {
+        this.input = input;
+        this.length = input.length();
+        this.flat = flat;
+        this.position = 0;
+    }
+    
+    /**
+     * Parse an expression.
+     * @param input expression to parse, as defined in Expression.g4
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    static Expression parse(CharSequence input) {
+        return new RecursiveDescentParser(input, false).root();
+    }
+    
+    /**
+     * Parse an expression into flat n-ary nodes: each chain of sums becomes a NarySum and
+     * each chain of products a NaryProduct, with numeric constants folded.
+     * @param input expression to parse, as defined in Expression.g4
+     * @return expression AST for the input, built from NarySum, NaryProduct, Number and Variable
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    static Expression parseFlat(CharSequence input) {
+        return new RecursiveDescentParser(input, true).root();
+    }
+    
+    /**
+     * Recognize root : sum EOF.
+     * 
+     * <p>Each open parenthesis would be a level of recursion through sum, product and
+     * primitive; instead, the state of each enclosing sum is kept on an explicit stack,
+     * so arbitrarily deep nesting cannot overflow the call stack.
+     */
+    private Expression root() {
+        final Deque<OpenSum> enclosing = new ArrayDeque<>();
+        OpenSum current = new OpenSum(flat);
+        while (true) {
+            // primitive : NUMBER | VARIABLE | '(' sum ')'
+            final int c = peek();
+            final Expression primitive;
+            if (c == '(') {
+                position++;
+                enclosing.push(current);
+                current = new OpenSum(flat);
+                continue;
+            } else if (isNumberChar(c)) {
+                primitive = number();
+            } else if (isLetter(c)) {
+                primitive = variable();
+            } else {
+                throw error("expected a number, variable or '('");
+            }
+            current.multiply(primitive);
+            
+            // after a primitive: continue the product or sum, or close parentheses
+            while (true) {
+                final int next = peek();
+                if (next == '*') {
+                    position++;
+                    break;
+                } else if (next == '+') {
+                    position++;
+                    current.endTerm();
+                    break;
+                } else if (next == ')' && !enclosing.isEmpty()) {
+                    position++;
+                    final Expression inner = current.end();
+                    current = enclosing.pop();
+                    current.multiply(inner);
+                } else if (next == -1) {
+                    if (!enclosing.isEmpty()) {
+                        throw error("missing ')'");
+                    }
+                    return current.end();
+                } else {
+                    throw error("extraneous input");
+                }
+            }
+        }
+    }
+    
+    /**
+     * A sum being recognized: the terms completed so far and the factors of the current
+     * term, either folded to the left into binary nodes or accumulated by n-ary builders.
+     */
+    private static final class OpenSum {
+        private final boolean flat;
+        private Expression sum;
+        private Expression product;
+        private NarySum.Builder flatSum;
+        private NaryProduct.Builder flatProduct;
+        
+        OpenSum(boolean flat) {
+            this.flat = flat;
+            if (flat) {
+                flatSum = new NarySum.Builder();
+                flatProduct = new NaryProduct.Builder();
+            }
+        }
+        
+        void multiply(Expression factor) {
+            if (flat) {
+                flatProduct.multiply(factor);
+            } else {
+                product = product == null ? factor : new Product(product, factor);
+            }
+        }
+        
+        void endTerm() {
+            if (flat) {
+                flatSum.add(flatProduct.build());
+                flatProduct = new NaryProduct.Builder();
+            } else {
+                sum = sum == null ? product : new Sum(sum, product);
+                product = null;
+            }
+        }
+        
+        Expression end() {
+            endTerm();
+            return flat ? flatSum.build() : sum;
+        }
+    }
+    
+    private Expression number() {
+        final int start = position;
+        long digits = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        int dots = 0;
+        while (position < length && isNumberChar(input.charAt(position))) {
+            final char c = input.charAt(position++);
+            if (c == '.') {
+                dots++;
+            } else {
+                if (digits != 0 || c != '0') {
+                    significantDigits++;
+                }
+                digits = digits * 10 + (c - '0');
+                if (dots > 0) {
+                    fractionDigits++;
+                }
+            }
+        }
+        if (dots <= 1 && significantDigits <= MAX_EXACT_DIGITS && fractionDigits <= MAX_EXACT_DIGITS
+                && position - start > dots) {
+            // both operands are exact doubles, so the quotient is correctly rounded,
+            // matching Double.parseDouble
+            return Number.of(digits / POWERS_OF_TEN[fractionDigits]);
+        }
+        // rare case: long literals, or malformed ones like "1.2.3" which must fail the same way
+        return Number.of(Double.parseDouble(input.subSequence(start, position).toString()));
+    }
+    
+    private Expression variable() {
+        final int start = position;
+        while (position < length && isLetter(input.charAt(position))) {
+            position++;
+        }
+        return new Variable(input.subSequence(start, position).toString());
+    }
+    
+    /**
+     * Skip spaces and return the next character without consuming it.
+     * @return the next non-space character, or -1 at the end of the input
+     * @throws IllegalArgumentException if the next character cannot start any token
+     */
+    private int peek() {
+        while (position < length && input.charAt(position) == ' ') {
+            position++;
+        }
+        if (position == length) {
+            return -1;
+        }
+        final char c = input.charAt(position);
+        if (c == '+' || c == '*' || c == '(' || c == ')' || isNumberChar(c) || isLetter(c)) {
+            return c;
+        }
+        throw error("token recognition error");
+    }
+    
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+    
+    private static boolean isNumberChar(int c) {
+        return (c >= '0' && c <= '9') || c == '.';
+    }
+    
+    private static boolean isLetter(int c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+}
@@ -0,0 +1,106 @@
+package expressivo;
+
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * A mutable console session: runs lines of console input against a current expression.
+ * 
+ * <p>The current expression is kept as an AST, so a command runs directly on the result
+ * of the previous line; text is produced only for the output of each line, never parsed
+ * back. Outputs are the same as running each line through the string-based Commands.
+ * 
+ * <p>A session is not thread-safe, but the expressions it holds are immutable, so a new
+ * session may continue from another's current expression on any thread.
+ * 
+ * Abstraction Function (AF):
+ *   AF(parser, currentExpression) = a console session whose current expression is
+ *     currentExpression.get(), or which has no current expression if it is empty;
+ *     parser is scratch space for parsing commands
+ * 
+ * Representation Invariant (RI):
+ *   true
+ * 
+ * Safety from rep exposure:
+ *   All fields are private; currentExpression is an immutable Optional of an immutable
+ *   Expression, and parser and its assignments are never returned.
+ */
+public final class Session {
+    
+    private final CommandParser parser = new CommandParser();
+    private Optional<Expression> currentExpression;
+    
+    /**
+     * Start a session with no current expression.
+     */
+    public Session() {
+        this(Optional.empty());
+    }
+    
+    /**
+     * Continue a session.
+     * @param currentExpression the current expression of the session, if any
+     */
+    public Session(Optional<Expression> currentExpression) {
+        this.currentExpression = currentExpression;
+    }
+    
+    /**
+     * @return the current expression, if any
+     */
+    public Optional<Expression> currentExpression() {
+        return currentExpression;
+    }
+    
+    /**
+     * Run one line of console input.
+     * @param input one of:
+     *        an expression, which becomes the current expression and is printed fully
+     *        parenthesized;
+     *        "!d/d" and a variable, which replaces the current expression by its
+     *        derivative and prints it as Commands.differentiate does;
+     *        "!simplify" and assignments "var=value", which prints the current expression
+     *        simplified as Commands.simplify does;
+     *        "!eval" and assignments, which prints the value of the current expression,
+     *        and fails unless every variable of it is assigned;
+     *        or "!print", which prints the current expression with minimal parentheses.
+     *        Only an expression or "!d/d" changes the current expression.
+     * @return the output to show for input, which is an error message if input fails
+     */
+    public String run(String input) {
+        try {
+            switch (parser.parse(input)) {
+            case DIFFERENTIATE: {
+                final Expression derivative = Commands.differentiate(currentExpression.get(), parser.variable());
+                currentExpression = Optional.of(derivative);
+                return derivative.toString(PrintMode.MINIMAL_PARENTHESES);
+            }
+            case SIMPLIFY:
+                return Commands.simplify(currentExpression.get(), parser.assignments())
+                        .toString(PrintMode.MINIMAL_PARENTHESES);
+            case EVALUATE:
+                return Doubles.toString(currentExpression.get().evaluate(parser.assignments()));
+            case PRINT:
+                return currentExpression.get().toString(PrintMode.MINIMAL_PARENTHESES);
+            default: {
+                final Expression expression = Expression.parse(input);
+                currentExpression = Optional.of(expression);
+                return expression.toString();
+            }
+            }
+        } catch (NoSuchElementException nse) {
+            // currentExpression was empty
+            return "must enter an expression before using this command";
+        } catch (RuntimeException re) {
+            return re.getClass().getName() + ": " + re.getMessage();
+        }
+    }
+    
+    /**
+     * @param input a line of console input
+     * @return true if and only if input is a command on the current expression, not a new expression
+     */
+    public static boolean isCommand(String input) {
+        return CommandParser.kind(input) != CommandParser.Kind.EXPRESSION;
+    }
+}
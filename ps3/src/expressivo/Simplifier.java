@@ -0,0 +1,189 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rule-based algebraic simplifier.
+ * 
+ * <p>Rewrites an expression bottom-up in a single pass, applying at each chain of sums
+ * or products:
+ * <ul>
+ * <li>constant folding: 2 * x * 3 becomes 6.0 * x, and 1 + x + 2 becomes x + 3.0
+ * <li>identities: 0 + e and e * 1 become e, and e * 0 becomes 0
+ * <li>like-term collection with coefficient merging: x * y + 2 * x * y becomes 3.0 * x * y
+ * </ul>
+ * Products of sums are never expanded, so the result never has more nodes than the
+ * input has as a tree.
+ * 
+ * <p>Simplified expressions are in a canonical shape: a sum is a left-nested chain of
+ * distinct terms in order of first appearance, followed by its constant if nonzero, and
+ * a product is a left-nested chain of factors, preceded by its coefficient if not 1.
+ * Each distinct node of a DAG is simplified once.
+ */
+public final class Simplifier {
+    
+    private Simplifier() {
+        // static utility, not instantiable
+    }
+    
+    /**
+     * @param expression any expression
+     * @return an expression equal in value to expression, with the rules above applied,
+     *         built from Number, Variable, Sum and Product nodes
+     */
+    public static Expression simplify(Expression expression) {
+        final Map<Expression, Expression> done = new IdentityHashMap<>();
+        final Deque<Object> work = new ArrayDeque<>();
+        final List<Expression> results = new ArrayList<>();
+        work.push(expression);
+        while (!work.isEmpty()) {
+            final Object next = work.pop();
+            if (next instanceof Chain) {
+                final Chain chain = (Chain) next;
+                final List<Expression> operands = results.subList(results.size() - chain.length, results.size());
+                final Expression result = chain.isSum ? collectTerms(operands) : collectFactors(operands);
+                operands.clear();
+                done.put(chain.root, result);
+                results.add(result);
+            } else if (next instanceof Number || next instanceof Variable) {
+                results.add((Expression) next);
+            } else {
+                final Expression node = (Expression) next;
+                final Expression known = done.get(node);
+                if (known != null) {
+                    results.add(known);
+                    continue;
+                }
+                final boolean isSum = isSum(node);
+                if (!isSum && !isProduct(node)) {
+                    throw new IllegalArgumentException("unknown expression " + node.getClass().getName());
+                }
+                final List<Expression> operands = ExpressionWalker.chainOperands(node, isSum);
+                work.push(new Chain(node, isSum, operands.size()));
+                for (int i = operands.size() - 1; i >= 0; i--) {
+                    work.push(operands.get(i));
+                }
+            }
+        }
+        return results.get(0);
+    }
+    
+    /**
+     * A maximal chain of sums or of products, waiting for its operands to be simplified.
+     */
+    private static final class Chain {
+        final Expression root;
+        final boolean isSum;
+        final int length;
+        
+        Chain(Expression root, boolean isSum, int length) {
+            this.root = root;
+            this.isSum = isSum;
+            this.length = length;
+        }
+    }
+    
+    private static boolean isSum(Expression node) {
+        return node instanceof Sum || node instanceof NarySum;
+    }
+    
+    private static boolean isProduct(Expression node) {
+        return node instanceof Product || node instanceof NaryProduct;
+    }
+    
+    /**
+     * @param terms simplified expressions
+     * @return the simplified sum of terms
+     */
+    private static Expression collectTerms(List<Expression> terms) {
+        double constant = 0;
+        // monomial -> its merged coefficient and factors, in order of first appearance
+        final Map<Expression, Term> collected = new LinkedHashMap<>();
+        for (Expression term : terms) {
+            for (Expression summand : ExpressionWalker.chainOperands(term, true)) {
+                if (summand instanceof Number) {
+                    constant += ((Number) summand).value();
+                    continue;
+                }
+                final List<Expression> factors = ExpressionWalker.chainOperands(summand, false);
+                double coefficient = 1;
+                if (factors.get(0) instanceof Number) {
+                    coefficient = ((Number) factors.remove(0)).value();
+                }
+                final Expression monomial = product(1, factors);
+                final Term existing = collected.get(monomial);
+                if (existing == null) {
+                    collected.put(monomial, new Term(coefficient, factors));
+                } else {
+                    existing.coefficient += coefficient;
+                }
+            }
+        }
+        Expression sum = null;
+        for (Term term : collected.values()) {
+            if (term.coefficient != 0) {
+                final Expression next = product(term.coefficient, term.factors);
+                sum = sum == null ? next : new Sum(sum, next);
+            }
+        }
+        if (sum == null) {
+            return Number.of(constant);
+        }
+        return constant == 0 ? sum : new Sum(sum, Number.of(constant));
+    }
+    
+    /**
+     * A monomial's factors and the sum of the coefficients it has appeared with.
+     */
+    private static final class Term {
+        double coefficient;
+        final List<Expression> factors;
+        
+        Term(double coefficient, List<Expression> factors) {
+            this.coefficient = coefficient;
+            this.factors = factors;
+        }
+    }
+    
+    /**
+     * @param factors simplified expressions
+     * @return the simplified product of factors
+     */
+    private static Expression collectFactors(List<Expression> factors) {
+        double coefficient = 1;
+        final List<Expression> kept = new ArrayList<>();
+        for (Expression factor : factors) {
+            for (Expression inner : ExpressionWalker.chainOperands(factor, false)) {
+                if (inner instanceof Number) {
+                    coefficient *= ((Number) inner).value();
+                } else {
+                    kept.add(inner);
+                }
+            }
+        }
+        if (coefficient == 0) {
+            return Number.of(0);
+        }
+        return product(coefficient, kept);
+    }
+    
+    /**
+     * @param coefficient a nonnegative number
+     * @param factors non-constant factors, none of them a product
+     * @return coefficient * factors[0] * ... as a left-nested chain, leaving out a
+     *         coefficient of 1
+     */
+    private static Expression product(double coefficient, List<Expression> factors) {
+        Expression product = coefficient == 1 && !factors.isEmpty() ? null : Number.of(coefficient);
+        for (Expression factor : factors) {
+            product = product == null ? factor : new Product(product, factor);
+        }
+        return product;
+    }
+}
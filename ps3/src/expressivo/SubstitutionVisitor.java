@@ -0,0 +1,68 @@
+package expressivo;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Substitutes values for variables bottom-up, folding every operation whose operands
+ * have both become numbers, as specified by Expression.simplify.
+ */
+class SubstitutionVisitor implements ExpressionVisitor<Expression> {
+    
+    private final Environment environment;
+    
+    /**
+     * @param environment maps variables to values
+     */
+    SubstitutionVisitor(Map<String, Double> environment) {
+        this(Environment.of(environment));
+    }
+    
+    /**
+     * @param environment assigns values to variables
+     */
+    SubstitutionVisitor(Environment environment) {
+        this.environment = environment;
+    }
+    
+    @Override public Expression visitNumber(Number number) {
+        return number;
+    }
+    
+    @Override public Expression visitVariable(Variable variable) {
+        final Number value = environment.substitute(variable);
+        return value == null ? variable : value;
+    }
+    
+    @Override public Expression visitSum(Sum sum, Expression leftSimple, Expression rightSimple) {
+        if (leftSimple instanceof Number && rightSimple instanceof Number) {
+            // both operands are constants, so fold them into a single number
+            return Number.of(((Number) leftSimple).value() + ((Number) rightSimple).value());
+        }
+        return new Sum(leftSimple, rightSimple);
+    }
+    
+    @Override public Expression visitProduct(Product product, Expression leftSimple, Expression rightSimple) {
+        if (leftSimple instanceof Number && rightSimple instanceof Number) {
+            // both operands are constants, so fold them into a single number
+            return Number.of(((Number) leftSimple).value() * ((Number) rightSimple).value());
+        }
+        return new Product(leftSimple, rightSimple);
+    }
+    
+    @Override public Expression visitNarySum(NarySum sum, List<Expression> termsSimple) {
+        final NarySum.Builder simple = new NarySum.Builder().add(Number.of(sum.constant()));
+        for (Expression term : termsSimple) {
+            simple.add(term); // constants are folded by the builder
+        }
+        return simple.build();
+    }
+    
+    @Override public Expression visitNaryProduct(NaryProduct product, List<Expression> factorsSimple) {
+        final NaryProduct.Builder simple = new NaryProduct.Builder().multiply(Number.of(product.coefficient()));
+        for (Expression factor : factorsSimple) {
+            simple.multiply(factor); // constants are folded by the builder
+        }
+        return simple.build();
+    }
+}
@@ -0,0 +1,137 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global table of variable names, each interned to a small integer id.
+ * 
+ * <p>Ids are assigned 0, 1, 2, ... in order of first use and are never reused, so two
+ * variables are equal if and only if their ids are, and code that works on variables can
+ * compare ids and index arrays by id instead of hashing and comparing Strings. The table
+ * only grows: a program sees a bounded vocabulary of variable names, and keeping every
+ * name keeps ids stable for the life of the program.
+ * 
+ * <p>Looking up a name or id takes no lock; only assigning a new id does.
+ */
+final class SymbolTable {
+    
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    
+    // names[id] is the canonical name of id, for every id < count; guarded by LOCK for
+    // writes, and published to readers through the volatile fields
+    private static volatile String[] names = new String[64];
+    private static volatile int count = 0;
+    
+    private SymbolTable() {
+        // static utility, not instantiable
+    }
+    
+    /**
+     * @param name a case-sensitive nonempty string of letters; callers must check it, as an
+     *        id, once assigned, is kept for the life of the program
+     * @return the id of name, assigning it the next id if it has none
+     */
+    static int intern(String name) {
+        final Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (LOCK) {
+            final Integer raced = IDS.get(name);
+            if (raced != null) {
+                return raced;
+            }
+            final int next = count;
+            String[] table = names;
+            if (next == table.length) {
+                table = Arrays.copyOf(table, 2 * next);
+            }
+            // canonical names are interned Strings too, so they match other interned names by reference
+            table[next] = name.intern();
+            names = table;
+            count = next + 1;
+            IDS.put(table[next], next);
+            return next;
+        }
+    }
+    
+    /**
+     * @param name any string
+     * @return the id of name, or -1 if it has none; never assigns an id
+     */
+    static int lookup(String name) {
+        final Integer id = IDS.get(name);
+        return id == null ? -1 : id;
+    }
+    
+    /**
+     * @param id an id assigned by intern
+     * @return the canonical name of id, an interned String
+     */
+    static String name(int id) {
+        if (id < 0 || id >= count) {
+            throw new IndexOutOfBoundsException("no variable with id " + id);
+        }
+        return names[id];
+    }
+    
+    /**
+     * @return number of ids assigned so far; every id is less than this
+     */
+    static int size() {
+        return count;
+    }
+    
+    /**
+     * The variable mask of an expression is a 64-bit summary of its variables, with bit
+     * (id mod 64) set for the id of every variable it contains. Operation nodes compute
+     * their mask once, when they are constructed, so asking whether a subtree can contain a
+     * variable costs one bit test however large the subtree is. Bits are shared by ids that
+     * are equal mod 64, so a set bit means the variable may be present; a clear bit means it
+     * is certainly absent.
+     * @param expression any expression
+     * @return the variable mask of expression
+     */
+    static long mask(Expression expression) {
+        if (expression instanceof Variable) {
+            return bit(((Variable) expression).id());
+        } else if (expression instanceof Sum) {
+            return ((Sum) expression).variables();
+        } else if (expression instanceof Product) {
+            return ((Product) expression).variables();
+        } else if (expression instanceof NarySum) {
+            return ((NarySum) expression).variables();
+        } else if (expression instanceof NaryProduct) {
+            return ((NaryProduct) expression).variables();
+        }
+        return 0;
+    }
+    
+    /**
+     * @param expression any expression
+     * @param id an id, or -1 for a name that has none
+     * @return false if expression certainly does not contain the variable with that id;
+     *         true if it may
+     */
+    static boolean mayContain(Expression expression, int id) {
+        return id >= 0 && (mask(expression) & bit(id)) != 0;
+    }
+    
+    /**
+     * @return the bit of id in a variable mask
+     */
+    private static long bit(int id) {
+        return 1L << (id & (Long.SIZE - 1));
+    }
+    
+    /**
+     * @param name any string
+     * @return true if and only if name is a nonempty string of letters
+     */
+    static boolean isName(CharSequence name) {
+        return Environment.isName(name, 0, name.length());
+    }
+}
@@ -1,30 +1,64 @@
 package expressivo;
 
+import java.util.Map;
+
 /**
  * Immutable data type representing a variable (case-sensitive string of letters).
  * Abstraction Function (AF):
- *   AF(name) = a variable with the name 'name'
+ *   AF(id, name) = a variable with the name 'name'
  * 
  * Representation Invariant (RI):
  *   name is non-empty and contains only letters.
+ *   id == SymbolTable.intern(name), and name is the canonical String SymbolTable.name(id)
  * 
  * Safety from rep exposure:
  *   All fields are private, final, and immutable.
  */
 public class Variable implements Expression {
+    private final int id;
     private final String name;
 
     // Abstraction function and rep invariant check
     private void checkRep() {
-        assert name.matches("[a-zA-Z]+") : "Variable name must contain only letters";
-        assert !name.isEmpty() : "Variable name must not be empty";
+        assert SymbolTable.isName(name) : "Variable name must be nonempty and contain only letters";
+        assert SymbolTable.name(id) == name : "Variable name must be canonical";
     }
 
+    /**
+     * @param name a case-sensitive nonempty string of letters
+     * @throws IllegalArgumentException if name is not a nonempty string of letters
+     */
     public Variable(String name) {
-        this.name = name;
+        this(SymbolTable.intern(requireName(name)));
+    }
+
+    // checked before interning, so that an invalid name never enters the symbol table
+    private static String requireName(String name) {
+        if (!SymbolTable.isName(name)) {
+            throw new IllegalArgumentException("not a variable name: " + name);
+        }
+        return name;
+    }
+
+    /**
+     * @param id an id assigned by SymbolTable.intern
+     */
+    Variable(int id) {
+        this.id = id;
+        this.name = SymbolTable.name(id);
         checkRep();
     }
 
+    /** @return the name of this variable, the canonical String of its id */
+    String name() {
+        return name;
+    }
+
+    /** @return the SymbolTable id of this variable */
+    int id() {
+        return id;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -34,7 +68,7 @@ public class Variable implements Expression {
     public boolean equals(Object thatObject) {
         if (!(thatObject instanceof Variable)) return false;
         Variable that = (Variable) thatObject;
-        return this.name.equals(that.name);
+        return this.id == that.id;
     }
 
     @Override
@@ -43,10 +77,25 @@ public class Variable implements Expression {
     }
     
     public Expression differentiate(String variable) {
-        if (this.name.equals(variable)) {
-            return new Number(1); // Derivative of x with respect to x is 1
+        return differentiate(SymbolTable.lookup(variable));
+    }
+
+    /**
+     * @param variable id of the variable to differentiate by, or -1 for a variable that
+     *        has no id and so appears in no expression
+     * @return the derivative of this variable with respect to that variable
+     */
+    Expression differentiate(int variable) {
+        if (this.id == variable) {
+            return Number.of(1); // Derivative of x with respect to x is 1
         } else {
-            return new Number(0); // Derivative of a variable with respect to a different variable is 0
+            return Number.of(0); // Derivative of a variable with respect to a different variable is 0
         }
     }
+
+    @Override
+    public Expression simplify(Map<String, Double> environment) {
+        final Double value = environment.get(name);
+        return value == null ? this : Number.of(value);
+    }
 }
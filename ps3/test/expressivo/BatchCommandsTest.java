@@ -0,0 +1,102 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for BatchCommands.
+ */
+public class BatchCommandsTest {
+
+    // Testing strategy
+    //   differentiate, simplify
+    //     number of expressions: 0, fewer than one task, many tasks
+    //     all expressions valid or some invalid
+    //   evaluate
+    //     rows: fewer than one task, many tasks
+    //   differentiate(Expression)
+    //     chain of Sums, chain of Products, short chain, long chain, nested chains
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final BatchCommands batch = new BatchCommands(pool);
+
+    @After
+    public void shutDownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testDifferentiatePreservesOrder() {
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expressions.add("x * " + i + " + y * x");
+        }
+        List<String> derivatives = batch.differentiate(expressions, "x");
+        for (int i = 0; i < expressions.size(); i++) {
+            assertEquals("expected derivative " + i, Commands.differentiate(expressions.get(i), "x"), derivatives.get(i));
+        }
+        assertTrue("expected empty result", batch.differentiate(new ArrayList<>(), "x").isEmpty());
+    }
+
+    @Test
+    public void testSimplify() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        List<String> expressions = new ArrayList<>();
+        expressions.add("x + 1");
+        expressions.add("x * y");
+        List<String> expected = new ArrayList<>();
+        expected.add(Commands.simplify("x + 1", environment));
+        expected.add(Commands.simplify("x * y", environment));
+        assertEquals("expected simplified expressions", expected, batch.simplify(expressions, environment));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExpression() {
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expressions.add(i == 37 ? "x +" : "x");
+        }
+        batch.differentiate(expressions, "x");
+    }
+
+    @Test
+    public void testEvaluateRows() {
+        int rows = 100000;
+        Map<String, double[]> columns = new HashMap<>();
+        double[] x = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = i;
+        }
+        columns.put("x", x);
+        double[] expected = new double[rows];
+        double[] actual = new double[rows];
+        Expression expression = Expression.parse("x * x + 2 * x + 1");
+        BatchEvaluator.evaluate(expression, columns, expected);
+        batch.evaluate(expression, columns, actual);
+        assertArrayEquals("expected same values", expected, actual, 0);
+    }
+
+    @Test
+    public void testDifferentiateLongChains() {
+        Expression sum = new Variable("x");
+        Expression product = new Variable("y");
+        for (int i = 1; i < 2000; i++) {
+            Expression term = i % 3 == 0 ? new Product(new Variable("x"), new Number(i)) : new Variable(i % 2 == 0 ? "x" : "y");
+            sum = new Sum(sum, term);
+            if (i < 600) {
+                product = new Product(product, i % 100 == 0 ? sum : term);
+            }
+        }
+        assertEquals("expected same derivative", sum.differentiate("x"), batch.differentiate(sum, "x"));
+        assertEquals("expected same derivative", product.differentiate("x"), batch.differentiate(product, "x"));
+    }
+}
@@ -0,0 +1,69 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for BatchEvaluator.
+ */
+public class BatchEvaluatorTest {
+
+    // Testing strategy
+    //   evaluate
+    //     rows: 0, fewer than one block, several blocks with a partial last block
+    //     expression: constant only, variables only, mixed, nested
+    //     columns: exactly the variables, extra columns, missing column, short column
+
+    @Test
+    public void testMatchesRowAtATime() {
+        Expression expression = Expression.parse("(x + 1) * (x * y + 2.5) + y * y * 3 + 4");
+        CompiledExpression program = CompiledExpression.compile(expression);
+        int rows = 2500;
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[rows]);
+        columns.put("y", new double[rows]);
+        columns.put("unused", new double[0]);
+        for (int i = 0; i < rows; i++) {
+            columns.get("x")[i] = i * 0.5;
+            columns.get("y")[i] = rows - i;
+        }
+        double[] out = new double[rows];
+        BatchEvaluator.evaluate(expression, columns, out);
+        for (int i = 0; i < rows; i++) {
+            double[] values = new double[2];
+            values[program.slotOf("x")] = columns.get("x")[i];
+            values[program.slotOf("y")] = columns.get("y")[i];
+            assertEquals("expected same value in row " + i, program.evaluate(values), out[i], 0);
+        }
+    }
+
+    @Test
+    public void testConstantExpression() {
+        double[] out = new double[3];
+        BatchEvaluator.evaluate(Expression.parse("2 * 3 + 1"), new HashMap<>(), out);
+        assertArrayEquals("expected constant in every row", new double[] { 7, 7, 7 }, out, 0);
+    }
+
+    @Test
+    public void testNoRows() {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[0]);
+        BatchEvaluator.evaluate(Expression.parse("x + 1"), columns, new double[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingColumn() {
+        BatchEvaluator.evaluate(Expression.parse("x + y"), new HashMap<>(), new double[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortColumn() {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[1]);
+        BatchEvaluator.evaluate(Expression.parse("x + 1"), columns, new double[2]);
+    }
+}
@@ -0,0 +1,100 @@
+package expressivo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for BatchMode.
+ */
+public class BatchModeTest {
+
+    // Testing strategy
+    //   run(in, out, workers)
+    //     input: empty, one line, many segments; ends at end of input or at an empty line
+    //     lines: expressions, !d/d and !simplify commands, invalid expressions, invalid commands,
+    //            commands before any expression
+    //     a segment whose first expression is invalid, so its commands continue the previous segment
+    //     workers: 1, many
+    //     output equals running each line through one Session, in order
+
+    private static String batch(List<String> lines, int workers) throws IOException {
+        final StringWriter out = new StringWriter();
+        BatchMode.run(new BufferedReader(new StringReader(String.join("\n", lines))), out, workers);
+        return out.toString();
+    }
+
+    private static String sequential(List<String> lines) {
+        final Session session = new Session();
+        final StringBuilder out = new StringBuilder();
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                break;
+            }
+            out.append(session.run(line)).append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertEquals("expected no output", "", batch(new ArrayList<>(), 2));
+    }
+
+    @Test
+    public void testShortSession() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("!d/dx");
+        lines.add("x * x + y");
+        lines.add("!d/dx");
+        lines.add("!simplify x=3");
+        lines.add("x +");
+        lines.add("!d/d");
+        lines.add("");
+        lines.add("ignored");
+        String output = batch(lines, 1);
+        assertEquals("expected same as console", sequential(lines), output);
+        assertTrue("expected missing expression message", output.startsWith("must enter an expression"));
+    }
+
+    @Test
+    public void testManySegments() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            switch (i % 5) {
+            case 0: lines.add("x * x * " + i + " + y"); break;
+            case 1: lines.add("!d/dx"); break;
+            case 2: lines.add("!simplify x=2 y=" + i); break;
+            case 3: lines.add(i % 1000 == 3 ? "(x +" : "x * y"); break; // some invalid lines
+            default: lines.add("!d/dy"); break;
+            }
+        }
+        assertEquals("expected same as console", sequential(lines), batch(lines, 4));
+    }
+
+    @Test
+    public void testInvalidExpressionStartsSegment() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("x * y");
+        for (int i = 0; i < 3000; i++) {
+            lines.add("!d/dy"); // commands never start a segment
+        }
+        for (int i = 0; i < 2500; i++) {
+            lines.add("invalid +"); // segments made only of invalid expressions
+        }
+        lines.add("!d/dx");
+        assertEquals("expected same as console", sequential(lines), batch(lines, 4));
+    }
+}
@@ -0,0 +1,115 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for CommandParser.
+ */
+public class CommandParserTest {
+
+    // Testing strategy
+    //   kind: expression, each command prefix, unknown "!" prefix
+    //   parse
+    //     !d/d: variable of 1 or >1 letters, trailing spaces, missing or invalid variable
+    //     !simplify, !eval: 0, 1, >1 assignments; spaces around '='; repeated variable;
+    //                       missing space, name, '=' or value; value not a number;
+    //                       value negative, NaN, infinite or overflowing; value -0
+    //     !print: with and without trailing spaces, trailing text
+    //   assignments reused across parses
+    //   parseValue: integer, fraction, leading '.', trailing '.', exponent, many digits
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testKind() {
+        assertEquals(CommandParser.Kind.EXPRESSION, CommandParser.kind("x + 1"));
+        assertEquals(CommandParser.Kind.EXPRESSION, CommandParser.kind("!nonsense"));
+        assertEquals(CommandParser.Kind.DIFFERENTIATE, CommandParser.kind("!d/dx"));
+        assertEquals(CommandParser.Kind.SIMPLIFY, CommandParser.kind("!simplify"));
+        assertEquals(CommandParser.Kind.EVALUATE, CommandParser.kind("!eval x=1"));
+        assertEquals(CommandParser.Kind.PRINT, CommandParser.kind("!print"));
+    }
+
+    @Test
+    public void testDifferentiate() {
+        final CommandParser parser = new CommandParser();
+        assertEquals(CommandParser.Kind.DIFFERENTIATE, parser.parse("!d/dx"));
+        assertEquals("x", parser.variable());
+        parser.parse("!d/dFoo   ");
+        assertEquals("Foo", parser.variable());
+    }
+
+    @Test(expected=Main.CommandSyntaxException.class)
+    public void testDifferentiateMissingVariable() {
+        new CommandParser().parse("!d/d ");
+    }
+
+    @Test(expected=Main.CommandSyntaxException.class)
+    public void testDifferentiateInvalidVariable() {
+        new CommandParser().parse("!d/dx1");
+    }
+
+    @Test
+    public void testAssignments() {
+        final CommandParser parser = new CommandParser();
+        assertEquals(CommandParser.Kind.SIMPLIFY, parser.parse("!simplify"));
+        assertEquals(0, parser.assignments().size());
+        parser.parse("!simplify x=1 y = 2.5  x=3 ");
+        assertEquals(2, parser.assignments().size());
+        assertEquals(3, parser.assignments().get("x"), 0);
+        assertEquals(2.5, parser.assignments().get("y"), 0);
+        assertEquals(CommandParser.Kind.EVALUATE, parser.parse("!eval z=1e3"));
+        assertEquals("previous assignments cleared", 1, parser.assignments().size());
+        assertEquals(1000, parser.assignments().get("z"), 0);
+    }
+
+    @Test
+    public void testMalformedAssignments() {
+        final CommandParser parser = new CommandParser();
+        for (String input : new String[] { "!simplifyx=1", "!simplify x", "!simplify x=", "!simplify =1",
+                "!simplify 1=1", "!eval x 1", "!print x" }) {
+            try {
+                parser.parse(input);
+                fail("expected syntax error for " + input);
+            } catch (Main.CommandSyntaxException expected) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void testValueOutOfRange() {
+        final CommandParser parser = new CommandParser();
+        for (String command : new String[] { "!simplify", "!eval" }) {
+            for (String value : new String[] { "-1", "-0.5", "NaN", "Infinity", "1e400" }) {
+                final String input = command + " x=" + value;
+                try {
+                    parser.parse(input);
+                    fail("expected syntax error for " + input);
+                } catch (Main.CommandSyntaxException expected) {
+                    assertTrue(input, expected.getMessage().startsWith("usage: " + command));
+                }
+            }
+        }
+        parser.parse("!eval x=-0");
+        assertEquals(-0.0, parser.assignments().get("x"), 0);
+    }
+
+    @Test(expected=NumberFormatException.class)
+    public void testValueNotNumber() {
+        new CommandParser().parse("!simplify x=one");
+    }
+
+    @Test
+    public void testParseValue() {
+        for (String value : new String[] { "0", "7", "2.5", ".5", "1.", "0.1", "123456.789",
+                "1234567890123456789", "0.30000000000000004", "1e-3", "-2", "Infinity" }) {
+            assertEquals(value, Double.parseDouble(value), CommandParser.parseValue("=" + value, 1, value.length() + 1), 0);
+        }
+    }
+}
@@ -5,6 +5,8 @@ package expressivo;
 
 import static org.junit.Assert.*;
 
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -73,5 +75,41 @@ public class CommandsTest {
 	        assertEquals("expected differentiated expression", exp4.differentiate("x"), exp);
 	    }
 
-    
+    @Test
+    public void testDifferentiateCommandSimplified() {
+        assertEquals("expected zero and one terms removed", "2.0 * x", Commands.differentiate("x * x", "x"));
+        assertEquals("expected constant derivative", "0.0", Commands.differentiate("y * y + 3", "x"));
+    }
+
+    @Test
+    public void testExpressionCommandsMatchStringCommands() {
+        final Expression expression = Expression.parse("x*x*y + 3*x + 2");
+        final Expression derivative = Commands.differentiate(expression, "x");
+        assertEquals(Commands.differentiate(expression.toString(), "x"), derivative.toString(PrintMode.MINIMAL_PARENTHESES));
+        final Map<String,Double> environment = new HashMap<>();
+        environment.put("y", 2.0);
+        assertEquals(Commands.simplify(expression.toString(), environment),
+                Commands.simplify(expression, environment).toString(PrintMode.MINIMAL_PARENTHESES));
+    }
+
+    @Test
+    public void testSimplifyToNumber() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        environment.put("y", 0.5);
+        assertEquals("expected a single number", "2.0", Commands.simplify("x * y + x * 0.5", environment));
+    }
+
+    @Test
+    public void testSimplifyPartially() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        assertEquals("expected x substituted", Expression.parse("2 * y"),
+            Expression.parse(Commands.simplify("x * y", environment)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSimplifyInvalid() {
+        Commands.simplify("x +", new HashMap<>());
+    }
 }
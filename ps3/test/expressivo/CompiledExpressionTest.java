@@ -0,0 +1,74 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for CompiledExpression.
+ */
+public class CompiledExpressionTest {
+
+    // Testing strategy
+    //   compile
+    //     expression: Number, Variable, Sum, Product, nested
+    //     variables: none, one, repeated
+    //   evaluate
+    //     with and without a caller-supplied stack, from an array, a map or an Environment
+    //     map or Environment missing a variable or not
+
+    @Test
+    public void testNumber() {
+        CompiledExpression compiled = CompiledExpression.compile(new Number(2.5));
+        assertEquals("expected no variables", Arrays.asList(), compiled.variables());
+        assertEquals("expected the constant", 2.5, compiled.evaluate(new double[0]), 0);
+    }
+
+    @Test
+    public void testSlotsInOrderOfAppearance() {
+        CompiledExpression compiled = CompiledExpression.compile(Expression.parse("y * x + y"));
+        assertEquals("expected distinct variables", Arrays.asList("y", "x"), compiled.variables());
+        assertEquals("expected slot of x", 1, compiled.slotOf("x"));
+        assertEquals("expected absent variable", -1, compiled.slotOf("z"));
+    }
+
+    @Test
+    public void testEvaluateMatchesSimplify() {
+        Expression expression = Expression.parse("(x + 1) * (x * y + 2.5) + y * y * 3");
+        CompiledExpression compiled = CompiledExpression.compile(expression);
+        double[] stack = new double[compiled.stackSize()];
+        for (double x = 0; x < 4; x += 0.5) {
+            for (double y = 0; y < 4; y += 1.5) {
+                Map<String, Double> environment = new HashMap<>();
+                environment.put("x", x);
+                environment.put("y", y);
+                double expected = ((Number) expression.simplify(environment)).value();
+                double[] values = new double[2];
+                values[compiled.slotOf("x")] = x;
+                values[compiled.slotOf("y")] = y;
+                assertEquals("expected same value", expected, compiled.evaluate(values, stack), 0);
+                assertEquals("expected same value", expected, compiled.evaluate(environment), 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEvaluateMissingVariable() {
+        CompiledExpression.compile(Expression.parse("x + y")).evaluate(new HashMap<>());
+    }
+
+    @Test
+    public void testEvaluateEnvironment() {
+        final CompiledExpression compiled = CompiledExpression.compile(Expression.parse("x * y + x"));
+        assertEquals("expected (3 * 2) + 3", 9, compiled.evaluate(new Environment().set("x", 3).set("y", 2)), 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEvaluateEnvironmentMissingVariable() {
+        CompiledExpression.compile(Expression.parse("x * y")).evaluate(new Environment().set("x", 3));
+    }
+}
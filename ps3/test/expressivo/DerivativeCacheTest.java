@@ -0,0 +1,129 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for DerivativeCache.
+ */
+public class DerivativeCacheTest {
+
+    // Testing strategy
+    //   differentiate(expression, variable)
+    //     first request (miss), repeated request with an equal expression (hit),
+    //     same expression by a different variable (miss)
+    //     result equals expression.differentiate(variable)
+    //     cache full by entry count, by node count; derivative heavier than the node bound;
+    //     small derivative of an expression heavier than the node bound
+    //   simplifiedDerivative(expression, variable): miss, hit; equals the simplified derivative
+    //     called from one thread or many
+    //   stats(), size(), nodes(), clear()
+
+    private static final Expression CUBIC = Expression.parse("x*x*x + 2*x*y + 1");
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        DerivativeCache cache = new DerivativeCache(16, 1000);
+        Expression first = cache.differentiate(CUBIC, "x");
+        assertEquals("expected plain derivative", CUBIC.differentiate("x"), first);
+        Expression again = cache.differentiate(Expression.parse("x*x*x + 2*x*y + 1"), "x");
+        assertSame("expected cached derivative", first, again);
+        cache.differentiate(CUBIC, "y");
+        assertEquals("expected counters", new CacheStats(1, 2, 0), cache.stats());
+        assertEquals("expected two entries", 2, cache.size());
+        assertTrue("expected nodes counted", cache.nodes() > 0);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        DerivativeCache cache = new DerivativeCache(2, 1000);
+        Expression a = Expression.parse("x * x");
+        Expression b = Expression.parse("x * y");
+        Expression c = Expression.parse("y * y");
+        Expression da = cache.differentiate(a, "x");
+        cache.differentiate(b, "x");
+        assertSame("expected hit refreshing a", da, cache.differentiate(a, "x"));
+        cache.differentiate(c, "x"); // evicts b
+        assertEquals("expected one eviction", 1, cache.stats().evictionCount());
+        assertSame("expected a kept", da, cache.differentiate(a, "x"));
+        long misses = cache.stats().missCount();
+        cache.differentiate(b, "x");
+        assertEquals("expected b recomputed", misses + 1, cache.stats().missCount());
+    }
+
+    @Test
+    public void testNodeBound() {
+        // an entry weighs its key and its derivative: 3 + 7 nodes for x * y
+        DerivativeCache cache = new DerivativeCache(100, 12);
+        Expression derivative = cache.differentiate(CUBIC, "x");
+        assertEquals("expected derivative returned", CUBIC.differentiate("x"), derivative);
+        assertEquals("expected oversized derivative not kept", 0, cache.size());
+        cache.differentiate(Expression.parse("x * y"), "x");
+        cache.differentiate(Expression.parse("y * x"), "x");
+        cache.differentiate(Expression.parse("x * x"), "x");
+        assertTrue("expected node bound respected", cache.nodes() <= 12);
+        assertTrue("expected evictions", cache.stats().evictionCount() > 0);
+        cache.clear();
+        assertEquals("expected empty", 0, cache.nodes());
+    }
+
+    @Test
+    public void testKeyCounted() {
+        // the derivative by an absent variable is tiny, but the cache would retain the key
+        Expression sum = new Variable("x");
+        for (int i = 0; i < 1000; i++) {
+            sum = new Sum(sum, new Product(new Variable("x"), new Number(i)));
+        }
+        DerivativeCache cache = new DerivativeCache(100, 500);
+        assertEquals("expected derivative returned", new Number(0), cache.differentiate(sum, "q"));
+        assertEquals("expected heavy key not kept", 0, cache.size());
+        cache.differentiate(Expression.parse("x * y"), "x");
+        assertEquals("expected nodes of key and derivative", 10, cache.nodes());
+    }
+
+    @Test
+    public void testSimplifiedDerivative() {
+        DerivativeCache cache = new DerivativeCache(16, 1000);
+        Expression first = cache.simplifiedDerivative(CUBIC, "x");
+        assertEquals("expected simplified derivative", Simplifier.simplify(CUBIC.differentiate("x")), first);
+        long misses = cache.stats().missCount();
+        assertSame("expected cached result", first, cache.simplifiedDerivative(Expression.parse("x*x*x + 2*x*y + 1"), "x"));
+        assertEquals("expected no recomputation", misses, cache.stats().missCount());
+        assertEquals("expected plain and simplified entries", 2, cache.size());
+        assertNotEquals("expected plain derivative kept apart", first, cache.differentiate(CUBIC, "x"));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final DerivativeCache cache = new DerivativeCache(4, 10000);
+        final String[] inputs = { "x * x", "x * y + y", "(x + 1) * (x + 2)", "x*x*x", "y", "3 * x * x" };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Expression>> results = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                final Expression input = Expression.parse(inputs[i % inputs.length]);
+                results.add(executor.submit(() -> cache.differentiate(input, "x")));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("expected same derivative on every thread",
+                        Expression.parse(inputs[i % inputs.length]).differentiate("x"), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue("expected size bound respected", cache.size() <= 4);
+        assertEquals("expected every lookup counted", 400, cache.stats().hitCount() + cache.stats().missCount());
+    }
+}
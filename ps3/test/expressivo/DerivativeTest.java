@@ -0,0 +1,175 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for Derivative and the variable masks it relies on.
+ */
+public class DerivativeTest {
+
+    // Testing strategy
+    //   SymbolTable.mask, mayContain: Number, Variable, Sum, Product, NarySum, NaryProduct;
+    //     variable present, absent, never interned; ids equal mod 64 (may-contain, not contains)
+    //   of: valid variable, invalid variable
+    //   isZero: expression contains the variable or doesn't; variable never interned
+    //   evaluate: equals expression().evaluate(...) exactly for binary trees, within rounding
+    //     for n-ary trees; independent subtrees; deep expression; missing variable
+    //   expression, toString, simplify: equal to the eager derivative; expanded once
+    //   Commands.differentiate: expression independent of the variable
+    //   ExpressionVisitor.shortcut: subtrees a visitor answers for are not walked
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testMask() {
+        final Expression x = new Variable("x");
+        final Expression y = new Variable("y");
+        final int xId = SymbolTable.lookup("x");
+        final int yId = SymbolTable.lookup("y");
+        assertEquals(0, SymbolTable.mask(new Number(2)));
+        assertTrue(SymbolTable.mayContain(x, xId));
+        assertEquals(SymbolTable.mask(x) | SymbolTable.mask(y), SymbolTable.mask(new Sum(x, new Product(y, new Number(2)))));
+        final Expression flat = Expression.parse("x * 2 + x * x + 3", ParseMode.FLATTENED);
+        assertTrue(SymbolTable.mayContain(flat, xId));
+        if (xId % 64 != yId % 64) {
+            assertFalse(SymbolTable.mayContain(flat, yId));
+        }
+        assertFalse(SymbolTable.mayContain(flat, -1));
+    }
+
+    @Test
+    public void testMaskSharedBits() {
+        // a name whose id equals x's mod 64 shares x's bit, so it may appear where x does
+        final int xId = SymbolTable.lookup("x");
+        String alias = null;
+        for (int i = 0; alias == null; i++) {
+            final String name = "derivativeAlias" + letters(i);
+            if (SymbolTable.intern(name) % 64 == xId % 64 && SymbolTable.lookup(name) != xId) {
+                alias = name;
+            }
+        }
+        final Expression e = Expression.parse("x * y");
+        assertTrue(SymbolTable.mayContain(e, SymbolTable.lookup(alias)));
+        final Derivative derivative = Derivative.of(e, alias);
+        assertFalse(derivative.isZero());
+        assertEquals(0, derivative.evaluate(new Environment().set("x", 2).set("y", 3)), 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testOfInvalidVariable() {
+        Derivative.of(new Variable("x"), "x1");
+    }
+
+    @Test
+    public void testIsZero() {
+        final Expression e = Expression.parse("x * y + 3");
+        assertFalse(Derivative.of(e, "x").isZero());
+        assertTrue(Derivative.of(Expression.parse("3 * 4"), "x").isZero());
+        assertTrue(Derivative.of(e, "derivativeNeverInterned").isZero());
+        assertEquals(-1, SymbolTable.lookup("derivativeNeverInterned"));
+    }
+
+    @Test
+    public void testEvaluateBinaryExact() {
+        final Environment environment = new Environment().set("x", 0.1).set("y", 3.7).set("z", 1e6);
+        for (String text : new String[] { "x", "2", "x * y", "(x + y) * (x * 3 + z)", "x * x * x + y * z",
+                "(y + z) * (y * 2 + z) + x * (y + 0.3)" }) {
+            final Expression e = Expression.parse(text);
+            for (String variable : new String[] { "x", "y", "z" }) {
+                assertEquals(text + " by " + variable,
+                        e.differentiate(variable).evaluate(environment),
+                        Derivative.of(e, variable).evaluate(environment), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluateNary() {
+        final Environment environment = new Environment().set("x", 1.5).set("y", 2.5);
+        for (String text : new String[] { "x * y * 3 + x + 2", "(x + y + 1) * x * x", "2 * 3 + y * y" }) {
+            final Expression e = Expression.parse(text, ParseMode.FLATTENED);
+            for (String variable : new String[] { "x", "y" }) {
+                assertEquals(text + " by " + variable,
+                        e.differentiate(variable).evaluate(environment),
+                        Derivative.of(e, variable).evaluate(environment), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluateDeep() {
+        final Variable x = new Variable("x");
+        final Variable y = new Variable("y");
+        Expression e = x;
+        for (int i = 1; i < 100_000; i++) {
+            e = new Sum(new Product(e, new Number(1)), i % 2 == 0 ? x : y);
+        }
+        final Environment environment = new Environment().set("x", 1).set("y", 1);
+        assertEquals(50_000.0, Derivative.of(e, "x").evaluate(environment), 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEvaluateMissingVariable() {
+        Derivative.of(Expression.parse("x * y"), "x").evaluate(new Environment().set("x", 1));
+    }
+
+    @Test
+    public void testExpression() {
+        final Expression e = Expression.parse("(x + y) * (x * 3 + 1)");
+        final Derivative derivative = Derivative.of(e, "x");
+        assertEquals(e.differentiate("x"), derivative.expression());
+        assertSame(derivative.expression(), derivative.expression());
+        assertEquals(e.differentiate("x").toString(), derivative.toString());
+        final Environment environment = new Environment().set("y", 2);
+        assertEquals(e.differentiate("x").simplify(environment), derivative.simplify(environment));
+    }
+
+    @Test
+    public void testShortcutSkipsIndependentSubtrees() {
+        final Expression independent = Expression.parse("(y + z) * (y * z + 3) + z * z");
+        final Expression e = new Sum(new Product(new Variable("x"), independent), new Product(independent, new Variable("x")));
+        final int[] leaves = { 0 };
+        final Expression derivative = ExpressionWalker.walk(e, new DifferentiationVisitor("x") {
+            @Override public Expression shortcut(Expression node) {
+                return zeroIfIndependent(node);
+            }
+            @Override public Expression visitNumber(Number number) {
+                leaves[0]++;
+                return super.visitNumber(number);
+            }
+            @Override public Expression visitVariable(Variable variable) {
+                leaves[0]++;
+                return super.visitVariable(variable);
+            }
+        });
+        assertEquals("expected only the two x leaves visited", 2, leaves[0]);
+        assertEquals(new Sum(new Sum(new Product(Number.of(1), independent), new Product(new Variable("x"), Number.of(0))),
+                new Sum(new Product(Number.of(0), new Variable("x")), new Product(independent, Number.of(1)))), derivative);
+    }
+
+    @Test
+    public void testCommandsIndependentOfVariable() {
+        for (String text : new String[] { "x * y + 3", "2", "(x + y) * (x * 3 + 1)" }) {
+            final Expression e = Expression.parse(text);
+            assertEquals(text, Simplifier.simplify(e.differentiate("q")), Commands.differentiate(e, "q"));
+        }
+        assertEquals("0.0", Commands.differentiate("x * y", "q"));
+    }
+
+    /** @return a distinct nonempty string of letters for each nonnegative i */
+    private static String letters(int i) {
+        final StringBuilder s = new StringBuilder();
+        do {
+            s.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return s.toString();
+    }
+}
@@ -0,0 +1,182 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for Environment.
+ */
+public class EnvironmentTest {
+
+    // Testing strategy
+    //   set: new name, bound name, name unbound by clear; whole String or region of text;
+    //        invalid name (empty, non-letters)
+    //   get, contains: bound, unbound, never seen
+    //   clear: empty or not, then refilled
+    //   size: 0, 1, >1
+    //   many names, so the table grows
+    //   asMap: equals an equal HashMap, reflects later changes, rejects modification
+    //   of(map): lookups read the map, reflects later changes, set and clear rejected
+    //   Expression.simplify(Environment): equals simplify(Map) with the same values;
+    //     expression: Number, Variable, Sum, Product, NarySum, NaryProduct
+    //   Expression.evaluate(Environment): every variable bound or not; deep expression
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testSetGet() {
+        final Environment environment = new Environment();
+        assertEquals(0, environment.size());
+        assertFalse(environment.contains("x"));
+        environment.set("x", 1.5).set("Foo", 2);
+        environment.set("x", 3);
+        assertEquals(2, environment.size());
+        assertEquals(3, environment.get("x"), 0);
+        assertEquals(2, environment.get("Foo"), 0);
+        assertFalse("names are case-sensitive", environment.contains("foo"));
+    }
+
+    @Test
+    public void testSetRegion() {
+        final Environment environment = new Environment();
+        environment.set("!simplify x=1 yy=2", 10, 11, 1);
+        environment.set("yy", 0, 2, 2);
+        assertEquals(1, environment.get("x"), 0);
+        assertEquals(2, environment.get("yy"), 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetInvalidName() {
+        new Environment().set("x1", 1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testSetEmptyName() {
+        new Environment().set("x", 0, 0, 1);
+    }
+
+    @Test(expected=NoSuchElementException.class)
+    public void testGetUnbound() {
+        new Environment().get("x");
+    }
+
+    @Test
+    public void testClearAndRefill() {
+        final Environment environment = new Environment().set("x", 1).set("y", 2);
+        environment.clear();
+        assertEquals(0, environment.size());
+        assertFalse(environment.contains("x"));
+        environment.set("y", 5);
+        assertEquals(1, environment.size());
+        assertEquals(5, environment.get("y"), 0);
+        assertFalse(environment.contains("x"));
+    }
+
+    @Test
+    public void testManyNames() {
+        final Environment environment = new Environment();
+        final Map<String, Double> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            final String name = Integer.toString(i, 26).chars()
+                    .collect(StringBuilder::new, (b, c) -> b.appendCodePoint(Character.isDigit(c) ? 'a' + c - '0' : c + 10), StringBuilder::append)
+                    .toString();
+            environment.set(name, i);
+            expected.put(name, (double) i);
+        }
+        assertEquals(expected, environment.asMap());
+        assertEquals(expected.toString(), environment.toString());
+    }
+
+    @Test
+    public void testAsMapView() {
+        final Environment environment = new Environment().set("x", 1);
+        final Map<String, Double> view = environment.asMap();
+        environment.set("y", 2);
+        assertEquals(2, view.size());
+        assertEquals(Double.valueOf(2), view.get("y"));
+        assertNull(view.get("z"));
+        assertNull(view.get(42));
+        environment.clear();
+        assertTrue(view.isEmpty());
+        try {
+            view.put("z", 3.0);
+            fail("expected unmodifiable view");
+        } catch (UnsupportedOperationException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testMapView() {
+        final Map<String, Double> map = new HashMap<>();
+        map.put("x", 1.0);
+        final Environment environment = Environment.of(map);
+        assertEquals(1, environment.size());
+        assertEquals(1, environment.get("x"), 0);
+        map.put("y", 2.0);
+        assertTrue(environment.contains("y"));
+        assertEquals(map, environment.asMap());
+        try {
+            environment.set("z", 3);
+            fail("expected read-only view");
+        } catch (UnsupportedOperationException expected) {
+            // ok
+        }
+        try {
+            environment.clear();
+            fail("expected read-only view");
+        } catch (UnsupportedOperationException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testSimplifyMatchesMap() {
+        final Map<String, Double> map = new HashMap<>();
+        map.put("x", 2.0);
+        map.put("z", 0.5);
+        final Environment environment = new Environment().set("x", 2).set("z", 0.5);
+        for (String input : Arrays.asList("3", "x", "y", "x + y * z", "x * z + 1", "(x + 1) * (y + z)")) {
+            for (ParseMode mode : new ParseMode[] { ParseMode.RECURSIVE_DESCENT, ParseMode.FLATTENED }) {
+                final Expression expression = Expression.parse(input, mode);
+                assertEquals(input, expression.simplify(map), expression.simplify(environment));
+                assertEquals(input, expression.simplify(map), expression.simplify(Environment.of(map)));
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluate() {
+        final Environment environment = new Environment().set("x", 2).set("y", 0.5);
+        for (String input : Arrays.asList("3", "x", "x + y * 3", "(x + 1) * (y + x) * 2", "x * x * x + y + 1")) {
+            for (ParseMode mode : new ParseMode[] { ParseMode.RECURSIVE_DESCENT, ParseMode.FLATTENED }) {
+                final Expression expression = Expression.parse(input, mode);
+                assertEquals(input, ((Number) expression.simplify(environment)).value(), expression.evaluate(environment), 0);
+            }
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEvaluateMissingVariable() {
+        Expression.parse("x + y").evaluate(new Environment().set("x", 1));
+    }
+
+    @Test
+    public void testEvaluateDeep() {
+        Expression deep = new Variable("x");
+        for (int i = 0; i < 100000; i++) {
+            deep = i % 2 == 0 ? new Sum(new Number(1), deep) : new Product(deep, new Number(1));
+        }
+        assertEquals(50001, deep.evaluate(new Environment().set("x", 1)), 0);
+    }
+}
@@ -0,0 +1,132 @@
+package expressivo;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionCodec and Expression.writeTo/readFrom.
+ */
+public class ExpressionCodecTest {
+
+    // Testing strategy
+    //   encode, decode, writeTo, readFrom
+    //     expression: Number (integer, fraction, huge, -0.0), Variable, Sum, Product,
+    //                 NarySum, NaryProduct, nested; repeated subtrees or not
+    //     deep expression (100000 levels)
+    //     buffer: at position 0 or not, with other data after the encoding
+    //     input malformed: wrong version, truncated, unknown opcode, bad reference,
+    //       name count or length beyond the input, invalid variable name, negative number,
+    //       n-ary sum constant or product coefficient negative or NaN
+    //   encoding size compared to toString
+
+    private static final List<String> CORPUS = Arrays.asList(
+            "x", "0", "0.1", "123456789012345678901234567890", "x + y", "x*y*z + 2*x + 1",
+            "(x + 1) * (x + 1) * (x + 1)", "((1.0 + x) * (x * 1.0))", "foo * bar + foo * bar");
+
+    private static Expression roundTrip(Expression expression) {
+        return ExpressionCodec.decode(ExpressionCodec.encode(expression));
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testRoundTripCorpus() {
+        for (String input : CORPUS) {
+            for (ParseMode mode : ParseMode.values()) {
+                Expression expression = Expression.parse(input, mode);
+                assertEquals("expected round trip of " + input + " in " + mode, expression, roundTrip(expression));
+            }
+        }
+    }
+
+    @Test
+    public void testNumbersExact() {
+        for (double value : new double[] { 0, -0.0, 1, 0.1, 1e300, Double.MIN_VALUE, 4294967296.0, 2.5 }) {
+            Number decoded = (Number) roundTrip(new Number(value));
+            assertEquals("expected identical bits for " + value,
+                    Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(decoded.value()));
+        }
+    }
+
+    @Test
+    public void testSharedSubtrees() {
+        Expression shared = Expression.parse("(x + y) * (z + w)");
+        Expression twice = new Sum(shared, Expression.parse("(x + y) * (z + w)"));
+        Expression decoded = roundTrip(twice);
+        assertEquals("expected round trip", twice, decoded);
+        assertSame("expected shared subtree", ((Sum) decoded).left(), ((Sum) decoded).right());
+        assertTrue("expected reference smaller than a copy",
+                ExpressionCodec.encode(twice).length < 2 * ExpressionCodec.encode(shared).length);
+    }
+
+    @Test
+    public void testSmallerThanText() {
+        Expression polynomial = Expression.parse("x*x*x + 3*x*x*y + 3*x*y*y + y*y*y");
+        assertTrue("expected smaller than text", ExpressionCodec.encode(polynomial).length * 5 < polynomial.toString().length() * 3);
+        Expression derivative = polynomial.differentiate("x").differentiate("y");
+        assertTrue("expected smaller than text", ExpressionCodec.encode(derivative).length * 3 < derivative.toString().length());
+    }
+
+    @Test
+    public void testBufferPositions() {
+        Expression first = Expression.parse("x * y + 2");
+        Expression second = Expression.parse("z", ParseMode.FLATTENED);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.put((byte) 42);
+        first.writeTo(buffer);
+        second.writeTo(buffer);
+        buffer.flip();
+        assertEquals("expected leading byte", 42, buffer.get());
+        assertEquals("expected first", first, Expression.readFrom(buffer));
+        assertEquals("expected second", second, Expression.readFrom(buffer));
+        assertFalse("expected buffer consumed", buffer.hasRemaining());
+    }
+
+    @Test
+    public void testDeep() {
+        Expression sum = new Variable("x");
+        for (int i = 1; i < 100000; i++) {
+            sum = new Sum(i % 3 == 0 ? new Product(new Number(i), sum) : sum, new Variable(i % 2 == 0 ? "x" : "y"));
+        }
+        assertEquals("expected deep round trip", sum, roundTrip(sum));
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[] valid = ExpressionCodec.encode(Expression.parse("x * y + 1"));
+        byte[][] malformed = {
+            {},
+            { 99 },
+            Arrays.copyOf(valid, valid.length - 1),
+            { 1, 0, 42 },      // unknown opcode
+            { 1, 0, 7, 0 },    // reference to nothing
+            { 1, 0, 3, 7, 0, 1, 0 }, // reference to the unfinished sum
+            { 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7 }, // name count beyond the input
+            { 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7 }, // name length beyond the input
+            { 1, 1, 2, 'x', '1', 2, 0 }, // invalid name x1
+            { 1, 1, 0, 2, 0 },           // empty name
+            { 1, 0, 0, (byte) 0xBF, (byte) 0xF0, 0, 0, 0, 0, 0, 0 }, // number -1.0
+            { 1, 1, 1, 'x', 5, 2, (byte) 0xC0, 0x0C, 0, 0, 0, 0, 0, 0, 2, 0, 2, 0 }, // sum constant -3.5
+            { 1, 1, 1, 'x', 5, 2, (byte) 0xBF, (byte) 0xF0, 0, 0, 0, 0, 0, 0, 2, 0, 2, 0 }, // sum constant -1.0
+            { 1, 1, 1, 'x', 5, 2, 0x7F, (byte) 0xF8, 0, 0, 0, 0, 0, 0, 2, 0, 2, 0 }, // sum constant NaN
+            { 1, 1, 1, 'x', 6, 2, (byte) 0xC0, 0x0C, 0, 0, 0, 0, 0, 0, 2, 0, 2, 0 }, // product coefficient -3.5
+            { 1, 1, 1, 'x', 6, 2, 0x7F, (byte) 0xF8, 0, 0, 0, 0, 0, 0, 2, 0, 2, 0 }, // product coefficient NaN
+        };
+        for (byte[] bytes : malformed) {
+            try {
+                ExpressionCodec.decode(bytes);
+                fail("expected IllegalArgumentException for " + Arrays.toString(bytes));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
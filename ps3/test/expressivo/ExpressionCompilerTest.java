@@ -0,0 +1,92 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionCompiler.
+ */
+public class ExpressionCompilerTest {
+
+    // Testing strategy
+    //   compile
+    //     constants: 0, 1, other, repeated
+    //     slots: small (iconst), byte-sized, short-sized
+    //     expression fits in one JVM method or doesn't; method within the JIT's size limit or not
+    //     expression already compiled or not; more distinct expressions than the cache keeps
+
+    @Test
+    public void testMatchesInterpreter() {
+        Expression expression = Expression.parse("(x + 1) * (x * y + 2.5) + y * y * 0 + 2.5 * x");
+        CompiledExpression program = CompiledExpression.compile(expression);
+        Evaluator evaluator = ExpressionCompiler.compile(expression);
+        for (double x = 0; x < 3; x += 0.25) {
+            double[] values = { x, 7 - x };
+            assertEquals("expected same value", program.evaluate(values), evaluator.eval(values), 0);
+        }
+    }
+
+    @Test
+    public void testManySlots() {
+        Expression expression = new Variable("v");
+        double[] values = new double[300];
+        double expected = 0;
+        for (int i = 0; i < values.length; i++) {
+            StringBuilder name = new StringBuilder("v");
+            for (int digits = i; digits > 0; digits /= 26) {
+                name.append((char) ('a' + digits % 26));
+            }
+            if (i > 0) {
+                expression = new Sum(expression, new Variable(name.toString()));
+            }
+            values[i] = i;
+            expected += i;
+        }
+        assertEquals("expected sum of all slots", expected, ExpressionCompiler.compile(expression).eval(values), 0);
+    }
+
+    @Test
+    public void testCached() {
+        Evaluator first = ExpressionCompiler.compile(Expression.parse("x * x + 3"));
+        Evaluator second = ExpressionCompiler.compile(Expression.parse("x*x + 3"));
+        assertSame("expected one compilation per distinct expression", first, second);
+    }
+
+    @Test
+    public void testTooLargeForOneMethod() {
+        Expression expression = new Product(new Variable("x"), new Number(2.5));
+        for (int i = 1; i < 10000; i++) {
+            expression = new Sum(expression, new Product(new Variable("x"), new Number(i)));
+        }
+        CompiledExpression program = CompiledExpression.compile(expression);
+        double[] values = { 0.5 };
+        assertEquals("expected same value", program.evaluate(values),
+                ExpressionCompiler.compile(program).eval(values), 0);
+    }
+
+    @Test
+    public void testTooLargeToJitCompile() {
+        // about 9 bytes of bytecode per term: over the JIT's 8000-byte limit, under the 64 KB one
+        Expression expression = new Product(new Variable("x"), new Number(2.5));
+        for (int i = 1; i < 2000; i++) {
+            expression = new Sum(expression, new Product(new Variable("x"), new Number(i)));
+        }
+        CompiledExpression program = CompiledExpression.compile(expression);
+        Evaluator evaluator = ExpressionCompiler.compile(program);
+        assertFalse("expected interpreter fallback", evaluator.getClass().getName().startsWith("expressivo.GeneratedEvaluator"));
+        double[] values = { 0.5 };
+        assertEquals("expected same value", program.evaluate(values), evaluator.eval(values), 0);
+        assertTrue("expected generated class for a small expression",
+                ExpressionCompiler.compile(CompiledExpression.compile(Expression.parse("x * 2.5")))
+                        .getClass().getName().startsWith("expressivo.GeneratedEvaluator"));
+    }
+
+    @Test
+    public void testCacheBounded() {
+        for (int i = 0; i <= ExpressionCompiler.MAXIMUM_CACHE_SIZE; i++) {
+            ExpressionCompiler.compile(new Sum(new Variable("x"), new Number(i + 0.5)));
+        }
+        assertTrue("expected bounded cache", ExpressionCompiler.cacheSize() <= ExpressionCompiler.MAXIMUM_CACHE_SIZE);
+    }
+}
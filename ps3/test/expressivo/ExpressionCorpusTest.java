@@ -0,0 +1,123 @@
+package expressivo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for ExpressionCorpus and ByteBufferCharStream.
+ */
+public class ExpressionCorpusTest {
+
+    // Testing strategy
+    //   forEach(file, mode, action)
+    //     file: empty, one line without final newline, many lines; "\n" or "\r\n" endings;
+    //           empty lines
+    //     mode: ANTLR, RECURSIVE_DESCENT, FLATTENED
+    //     window: whole file, smaller than the file so lines cross window boundaries,
+    //             smaller than a line
+    //     a line is invalid
+    //   ByteBufferCharStream as CharSequence: length, charAt, subSequence, toString
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final List<String> LINES = Arrays.asList(
+            "x", "1 + 2 * y", "(x + 1) * (x + 2)", "x*x*x + 2*x + 1", "foo * bar + 0.5", "((a))");
+
+    private Path write(String text) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        return file.toPath();
+    }
+
+    private static List<Expression> load(Path file, ParseMode mode, int windowSize) throws IOException {
+        final List<Expression> expressions = new ArrayList<>();
+        final long count = ExpressionCorpus.forEach(file, mode, expressions::add, windowSize);
+        assertEquals("expected count to match", expressions.size(), count);
+        return expressions;
+    }
+
+    private static List<Expression> expected(ParseMode mode) {
+        final List<Expression> expressions = new ArrayList<>();
+        for (String line : LINES) {
+            expressions.add(Expression.parse(line, mode));
+        }
+        return expressions;
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        assertEquals("expected no expressions", 0,
+                ExpressionCorpus.forEach(write(""), ParseMode.ANTLR, e -> fail("unexpected " + e)));
+    }
+
+    @Test
+    public void testAllModes() throws IOException {
+        final Path file = write(String.join("\n", LINES) + "\n");
+        for (ParseMode mode : ParseMode.values()) {
+            assertEquals("expected every line parsed with " + mode, expected(mode), load(file, mode, 1 << 20));
+        }
+    }
+
+    @Test
+    public void testCrLfAndEmptyLines() throws IOException {
+        final Path file = write("\r\n" + String.join("\r\n\r\n", LINES)); // no final newline
+        assertEquals("expected every line parsed", expected(ParseMode.ANTLR), load(file, ParseMode.ANTLR, 1 << 20));
+    }
+
+    @Test
+    public void testSmallWindows() throws IOException {
+        final Path file = write(String.join("\n", LINES) + "\n");
+        for (int windowSize = 18; windowSize < 40; windowSize += 7) {
+            assertEquals("expected lines across windows of " + windowSize, expected(ParseMode.RECURSIVE_DESCENT),
+                    load(file, ParseMode.RECURSIVE_DESCENT, windowSize));
+        }
+    }
+
+    @Test(expected=IOException.class)
+    public void testLineLongerThanWindow() throws IOException {
+        load(write(String.join("\n", LINES)), ParseMode.ANTLR, 4);
+    }
+
+    @Test
+    public void testInvalidLine() throws IOException {
+        final Path file = write("x\ny +\nz\n");
+        for (ParseMode mode : ParseMode.values()) {
+            try {
+                load(file, mode, 1 << 20);
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertTrue("expected line number in " + e.getMessage(), e.getMessage().startsWith("line 2: "));
+            }
+        }
+    }
+
+    @Test
+    public void testCharSequence() {
+        final ByteBuffer bytes = ByteBuffer.wrap("..x + 12..".getBytes(StandardCharsets.US_ASCII));
+        final ByteBufferCharStream text = new ByteBufferCharStream(bytes, 2, 8);
+        assertEquals("expected length", 6, text.length());
+        assertEquals("expected char", '+', text.charAt(2));
+        assertEquals("expected text", "x + 12", text.toString());
+        assertEquals("expected subsequence", "12", text.subSequence(4, 6).toString());
+        assertEquals("expected parse", Expression.parse("x + 12"), Expression.parse(text, ParseMode.RECURSIVE_DESCENT));
+    }
+}
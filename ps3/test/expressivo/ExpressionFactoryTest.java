@@ -0,0 +1,95 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionFactory.
+ */
+public class ExpressionFactoryTest {
+
+    // Testing strategy
+    //   number, variable, sum, product, intern
+    //     expression already built by the factory or not
+    //   differentiate
+    //     expression has shared subexpressions or doesn't
+    //     differentiated once or repeatedly
+    //     expression has subexpressions without the variable (not walked, derivative 0)
+
+    private final ExpressionFactory factory = new ExpressionFactory();
+
+    @Test
+    public void testEqualExpressionsAreSame() {
+        Expression first = factory.sum(factory.number(1), factory.variable("x"));
+        Expression second = factory.sum(factory.number(1.0), factory.variable("x"));
+        assertSame("expected one canonical instance", first, second);
+        assertEquals("expected equal to an ordinary tree", new Sum(new Number(1), new Variable("x")), first);
+    }
+
+    @Test
+    public void testDifferentExpressionsAreNotSame() {
+        Expression sum = factory.sum(factory.variable("x"), factory.variable("y"));
+        Expression product = factory.product(factory.variable("x"), factory.variable("y"));
+        assertNotSame("expected different instances", sum, product);
+    }
+
+    @Test
+    public void testIntern() {
+        Expression tree = Expression.parse("(x + 1) * (x + 1)");
+        Product interned = (Product) factory.intern(tree);
+        assertEquals("expected equal expression", tree, interned);
+        assertSame("expected shared subexpression", interned.left(), interned.right());
+        assertSame("expected canonical instance", interned, factory.intern(Expression.parse("(x+1)*(x+1)")));
+    }
+
+    @Test
+    public void testDifferentiateMatchesTree() {
+        Expression tree = Expression.parse("x * y * x + 2 * x");
+        assertEquals("expected same derivative", tree.differentiate("x"), factory.differentiate(tree, "x"));
+    }
+
+    @Test
+    public void testDifferentiateSkipsIndependentSubtrees() {
+        Expression independent = new Variable("z");
+        for (int i = 0; i < 100_000; i++) {
+            independent = new Product(new Sum(independent, new Variable("y")), new Number(2));
+        }
+        final Expression tree = new Product(new Variable("x"), independent);
+        final Product interned = (Product) factory.intern(tree);
+        assertEquals("expected independent derivative 0",
+                factory.sum(factory.product(factory.number(1), interned.right()),
+                        factory.product(interned.left(), factory.number(0))),
+                factory.differentiate(tree, "x"));
+        final Expression zero = factory.differentiate(Expression.parse("(y + z) * (y * 3)"), "x");
+        assertEquals("expected 0 for a wholly independent expression", new Number(0), zero);
+        assertEquals("expected the same value as the full derivative", 0.0,
+                Expression.parse("(y + z) * (y * 3)").differentiate("x").evaluate(new Environment().set("y", 1).set("z", 2)), 0);
+    }
+
+    @Test
+    public void testRepeatedDifferentiateStaysCompact() {
+        Expression tree = Expression.parse("x * x * x * x");
+        Expression derivative = tree;
+        for (int i = 0; i < 6; i++) {
+            derivative = factory.differentiate(derivative, "x");
+        }
+        // the tree form of the 6th derivative has nearly 18000 nodes
+        assertTrue("expected a compact DAG", distinctNodes(derivative, new IdentityHashMap<>()) < 200);
+    }
+
+    private static int distinctNodes(Expression e, Map<Expression, Boolean> seen) {
+        if (seen.put(e, true) != null) {
+            return 0;
+        }
+        if (e instanceof Sum) {
+            return 1 + distinctNodes(((Sum) e).left(), seen) + distinctNodes(((Sum) e).right(), seen);
+        } else if (e instanceof Product) {
+            return 1 + distinctNodes(((Product) e).left(), seen) + distinctNodes(((Product) e).right(), seen);
+        }
+        return 1;
+    }
+}
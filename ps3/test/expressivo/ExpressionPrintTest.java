@@ -0,0 +1,123 @@
+package expressivo;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for Expression.appendTo, Expression.toString(PrintMode), and Doubles.
+ */
+public class ExpressionPrintTest {
+
+    // Testing strategy
+    //   appendTo, toString(PrintMode)
+    //     mode: FULLY_PARENTHESIZED, MINIMAL_PARENTHESES
+    //     expression: Number, Variable, Sum, Product, NarySum, NaryProduct;
+    //                 operand of lower, equal, higher precedence; left or right operand
+    //     out: StringBuilder, Writer; text shorter or longer than one chunk
+    //     deep expression (100000 levels)
+    //   Doubles.toString
+    //     value: 0, -0.0, integral below or above 10^15, fraction, below 10^-3, above 10^7
+
+    private static final List<String> CORPUS = Arrays.asList(
+            "x", "0", "0.125", "100000000000000000000", "x + y + z", "x + (y + z)", "x * y + z", "x * (y + z)",
+            "(x + y) * (z + 1)", "x * (y * z)", "((1.0 + x) * (x * 1.0))", "x*y*z + 2*x + 1",
+            "(x + 1) * (x + 1) * (x + 1) + 0.000001");
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testFullyParenthesizedMatchesToString() throws IOException {
+        for (String input : CORPUS) {
+            final Expression expression = Expression.parse(input);
+            final StringBuilder out = new StringBuilder("> ");
+            expression.appendTo(out);
+            assertEquals(input, "> " + expression, out.toString());
+            assertEquals(input, expression.toString(), expression.toString(PrintMode.FULLY_PARENTHESIZED));
+        }
+    }
+
+    @Test
+    public void testMinimalParentheses() {
+        assertEquals("x", Expression.parse("(x)").toString(PrintMode.MINIMAL_PARENTHESES));
+        assertEquals("x + y + z", Expression.parse("(x + y) + z").toString(PrintMode.MINIMAL_PARENTHESES));
+        assertEquals("x + (y + z)", Expression.parse("x + (y + z)").toString(PrintMode.MINIMAL_PARENTHESES));
+        assertEquals("x * y + z", Expression.parse("(x * y) + z").toString(PrintMode.MINIMAL_PARENTHESES));
+        assertEquals("x + y * z", Expression.parse("x + (y * z)").toString(PrintMode.MINIMAL_PARENTHESES));
+        assertEquals("(x + y) * z", Expression.parse("(x + y) * z").toString(PrintMode.MINIMAL_PARENTHESES));
+        assertEquals("x * (y * z)", Expression.parse("x * (y * z)").toString(PrintMode.MINIMAL_PARENTHESES));
+    }
+
+    @Test
+    public void testMinimalParenthesesNary() {
+        final Expression flat = Expression.parse("x * y * 3 + (x + 1) * z + 2", ParseMode.FLATTENED);
+        assertEquals("3.0 * x * y + (x + 1.0) * z + 2.0", flat.toString(PrintMode.MINIMAL_PARENTHESES));
+    }
+
+    @Test
+    public void testMinimalRoundTrip() {
+        for (String input : CORPUS) {
+            final Expression binary = Expression.parse(input);
+            final String minimal = binary.toString(PrintMode.MINIMAL_PARENTHESES);
+            assertEquals(input, binary, Expression.parse(minimal));
+            assertTrue(input, minimal.length() <= binary.toString().length());
+
+            final Expression flat = Expression.parse(input, ParseMode.FLATTENED);
+            assertEquals(input, flat, Expression.parse(flat.toString(PrintMode.MINIMAL_PARENTHESES), ParseMode.FLATTENED));
+            assertEquals(input, flat, Expression.parse(flat.toString(), ParseMode.FLATTENED));
+        }
+    }
+
+    @Test
+    public void testAppendToWriterLongerThanChunk() throws IOException {
+        final StringBuilder input = new StringBuilder("x");
+        for (int i = 0; i < 5000; i++) {
+            input.append(" + y * ").append(i);
+        }
+        final Expression expression = Expression.parse(input.toString());
+        for (PrintMode mode : PrintMode.values()) {
+            final StringWriter out = new StringWriter();
+            expression.appendTo(out, mode);
+            assertEquals(expression.toString(mode), out.toString());
+        }
+    }
+
+    @Test
+    public void testDeepExpression() {
+        Expression deep = new Variable("x");
+        for (int i = 0; i < 100000; i++) {
+            deep = i % 2 == 0 ? new Sum(deep, new Number(i)) : new Product(deep, new Variable("y"));
+        }
+        final String minimal = deep.toString(PrintMode.MINIMAL_PARENTHESES);
+        assertTrue(minimal.length() < deep.toString().length());
+        assertEquals(deep, Expression.parse(minimal, ParseMode.RECURSIVE_DESCENT));
+    }
+
+    @Test
+    public void testNumbersInPlainNotation() {
+        assertEquals("0.0", Doubles.toString(0));
+        assertEquals("0.0", Doubles.toString(-0.0));
+        assertEquals("42.0", Doubles.toString(42));
+        assertEquals("0.125", Doubles.toString(0.125));
+        assertEquals("123456789012345.0", Doubles.toString(123456789012345.0));
+        assertEquals("100000000000000000000", Doubles.toString(1e20));
+        assertEquals("0.0000001", Doubles.toString(1e-7));
+        assertEquals("12345678.9", Doubles.toString(12345678.9));
+    }
+
+    @Test
+    public void testNumbersRoundTrip() {
+        for (double value : new double[] { 1e20, 1e-7, Double.MAX_VALUE, Double.MIN_VALUE, 0.1, 1e15, 1.0 / 3 }) {
+            final Number number = new Number(value);
+            assertEquals(number.toString(), number, Expression.parse(number.toString()));
+        }
+    }
+}
@@ -3,6 +3,13 @@
  */
 package expressivo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.Map;
 
 import static org.junit.Assert.*;
@@ -25,24 +32,34 @@ public class ExpressionTest {
     //       Variable.var: differs in case or doesn't
     //       Operation.op: equals or doesn't
     //       Operation.left, right: in the same order or not
+    //   hashCode()
+    //     Operation.op differs, operands swapped, grouping differs
     //   parse(input)
     //     Expression type: Number, Variable, Operation
     //       Operation.op: +, *
     //       Operation.left, right type: Number, Variable, Operation
     //       Operations follow order of operations or don't
     //     input is a valid expression or isn't
+    //     parse mode: ANTLR, RECURSIVE_DESCENT (must agree on every input)
+    //     parser reused after a valid or an invalid input, from one thread or many;
+    //     after an input too long for its buffers to be kept
     //   differentiate(variable)
     //     Expression type: Number, Variable, Operation
     //       Operation.op: +, *
     //       Operation.left, right type: Number, Variable, Operation
     //     Expression contains the variable or doesn't
     //     Expression contains other variables or doesn't
+    //   deep expressions (100000 levels): toString, equals, differentiate, simplify, parse
+    //     left-nested chain of operations, nested parentheses
     //   simplify(environment)
     //     Expression type: Number, Variable, Operation
     //       Operation.op: +, *
     //       Operation.left, right type: Number, Variable, Operation
     //     environment contains all the variables or doesn't
     //     environment contains other variables or doesn't
+    //   Number.of(value)
+    //     value: small integer, large integer, fraction, 0, -0.0, negative integer (precondition violated)
+    //     value requested before or not; derivative leaves and parsed literals shared
 
     private final Expression zero = new Number(0);
     private final Expression one = new Number(1);
@@ -122,6 +139,14 @@ public class ExpressionTest {
         assertEquals("expected equal hashcode", exp3.hashCode(), exp.hashCode());
     }
 
+    @Test
+    public void testHashCodeDistinguishesOperators() {
+        assertNotEquals("expected different hashcodes", new Sum(x, y).hashCode(), new Product(x, y).hashCode());
+        assertNotEquals("expected different hashcodes", new Sum(x, y).hashCode(), new Sum(y, x).hashCode());
+        assertNotEquals("expected different hashcodes",
+                new Sum(new Sum(x, y), x).hashCode(), new Sum(x, new Sum(y, x)).hashCode());
+    }
+
     @Test
     public void testInequalityNumber() {
         Expression exp = new Number(2);
@@ -165,6 +190,193 @@ public class ExpressionTest {
             assert true;
         }
     }
-}
 
-    
\ No newline at end of file
+    @Test
+    public void testParseOrderOfOperations() {
+        Expression exp = new Sum(one, new Product(x, two));
+        assertEquals("expected product to bind tighter", exp, Expression.parse("1 + x * 2"));
+    }
+
+    @Test
+    public void testParseParenthesesAndLeftFold() {
+        Expression exp = new Product(new Product(exp1, x), one);
+        assertEquals("expected left-folded product", exp, Expression.parse("(1+x)*x*1"));
+    }
+
+    private static final List<String> PARSE_CORPUS = Arrays.asList(
+            "1", "0.5", "3.", ".25", "007", "1.2.3", ".", "123456789012345678901234567890",
+            "0.1000000000000000055511151231257827", "x", "Foo", "x + y", "x+y*z", "(x + y) * z",
+            "((1.0 + x) * (x * 1.0))", "  2 *  (x+ 3 )  ", "x*x*x + 2*x + 1", "(((a)))",
+            "", " ", "3 x", "3x", "x +", "* x", "(x + 1", "x + 1)", "()", "x - 1", "x\t+ 1", "x_y");
+
+    @Test
+    public void testParseModesAgree() {
+        for (String input : PARSE_CORPUS) {
+            Expression antlr = null;
+            Expression handWritten = null;
+            try {
+                antlr = Expression.parse(input, ParseMode.ANTLR);
+            } catch (IllegalArgumentException e) {
+                // invalid input, checked below
+            }
+            try {
+                handWritten = Expression.parse(input, ParseMode.RECURSIVE_DESCENT);
+            } catch (IllegalArgumentException e) {
+                // invalid input, checked below
+            }
+            assertEquals("expected parse modes to agree on \"" + input + "\"", antlr, handWritten);
+        }
+    }
+
+    @Test
+    public void testParserPoolReuseAfterError() {
+        ExpressionParserPool pool = new ExpressionParserPool();
+        assertEquals("expected first parse", exp3, pool.parse("(1 + x) * (x * 1)"));
+        try {
+            pool.parse("(1 + x");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("expected parse after error", exp4, pool.parse("x * y"));
+        assertEquals("expected shorter input after longer one", x, pool.parse("x"));
+    }
+
+    @Test
+    public void testParserPoolReuseAfterLongInput() {
+        ExpressionParserPool pool = new ExpressionParserPool();
+        StringBuilder text = new StringBuilder("x");
+        for (int i = 0; i < 20_000; i++) {
+            text.append(" + x");
+        }
+        Expression sum = pool.parse(text.toString());
+        assertTrue("expected a sum", sum instanceof Sum);
+        assertEquals("expected parse after long input", exp4, pool.parse("x * y"));
+        try {
+            pool.parse(text.append(" +").toString());
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("expected parse after long invalid input", x, pool.parse("x"));
+    }
+
+    @Test
+    public void testParserPoolConcurrent() throws Exception {
+        final ExpressionParserPool pool = new ExpressionParserPool();
+        pool.warmUp();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<String> inputs = Arrays.asList("x", "x + y", "(x + y) * z", "x*x*x + 2*x + 1", "2 * (x+ 3)");
+            List<Future<Expression>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final String input = inputs.get(i % inputs.size());
+                results.add(executor.submit(() -> pool.parse(input)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Expression expected = Expression.parse(inputs.get(i % inputs.size()), ParseMode.RECURSIVE_DESCENT);
+                assertEquals("expected same result on every thread", expected, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSimplifyAllVariables() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        assertEquals("expected a single number", new Number(6), exp3.simplify(environment));
+    }
+
+    @Test
+    public void testSimplifySomeVariables() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("y", 3.0);
+        environment.put("z", 5.0);
+        assertEquals("expected y substituted", new Product(x, new Number(3)), exp4.simplify(environment));
+    }
+
+    @Test
+    public void testSimplifyNoVariables() {
+        assertEquals("expected constants folded", new Number(3), new Sum(one, two).simplify(new HashMap<>()));
+        assertEquals("expected unchanged", exp1, exp1.simplify(new HashMap<>()));
+    }
+
+    private static final int DEEP = 100000;
+
+    private static Expression deepSum() {
+        Expression sum = new Variable("x");
+        for (int i = 1; i < DEEP; i++) {
+            sum = new Sum(sum, i % 2 == 0 ? new Variable("x") : new Product(new Number(2), new Variable("y")));
+        }
+        return sum;
+    }
+
+    @Test
+    public void testDeepExpressionOperations() {
+        Expression sum = deepSum();
+        assertEquals("expected equal deep trees", deepSum(), sum);
+        assertEquals("expected equal hashcodes", deepSum().hashCode(), sum.hashCode());
+        String text = sum.toString();
+        assertTrue("expected deep text", text.endsWith(" + x) + (2.0 * y))"));
+        assertEquals("expected round trip", sum, Expression.parse(text, ParseMode.RECURSIVE_DESCENT));
+        Expression derivative = sum.differentiate("x");
+        assertTrue("expected a sum", derivative instanceof Sum);
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 1.0);
+        environment.put("y", 1.0);
+        assertEquals("expected evaluated derivative", new Number(DEEP / 2), derivative.simplify(environment));
+    }
+
+    @Test
+    public void testParseDeepNesting() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < DEEP; i++) {
+            text.append('(');
+        }
+        text.append('x');
+        for (int i = 0; i < DEEP; i++) {
+            text.append(')');
+        }
+        assertEquals("expected parentheses removed", x, Expression.parse(text, ParseMode.RECURSIVE_DESCENT));
+    }
+
+    @Test
+    public void testNumberOfSmallIntegers() {
+        assertSame("expected shared 0", Number.of(0), Number.of(0.0));
+        assertSame("expected shared 1", Number.of(1), Number.of(1));
+        assertEquals("expected equal to new Number", new Number(255), Number.of(255));
+    }
+
+    @Test
+    public void testNumberOfOtherValues() {
+        assertEquals("expected equal to new Number", new Number(2.5), Number.of(2.5));
+        assertSame("expected recent value shared", Number.of(2.5), Number.of(2.5));
+        assertEquals("expected equal to new Number", new Number(1e6), Number.of(1e6));
+        assertEquals("expected equal to new Number", new Number(0.1), Number.of(0.1));
+    }
+
+    // covers negative integer: rejected by the rep invariant, not by an index out of range
+    @Test(expected=AssertionError.class)
+    public void testNumberOfNegativeInteger() {
+        Number.of(-1);
+    }
+
+    @Test
+    public void testNumberOfNegativeZero() {
+        assertEquals("expected -0.0 kept", new Number(-0.0), Number.of(-0.0));
+        assertNotEquals("expected -0.0 distinct from 0", Number.of(0), Number.of(-0.0));
+    }
+
+    @Test
+    public void testNumberOfShared() {
+        assertSame("expected shared 1", Number.of(1), new Variable("x").differentiate("x"));
+        assertSame("expected shared 0", Number.of(0), new Variable("y").differentiate("x"));
+        assertSame("expected shared 0", Number.of(0), new Number(2.5).differentiate("x"));
+        final Sum derivative = (Sum) Expression.parse("x * y").differentiate("x");
+        assertSame("expected shared 1", Number.of(1), ((Product) derivative.left()).left());
+        final Product literals = (Product) ((Sum) Expression.parse("x * y + 2.5 * 2.5")).right();
+        assertSame("expected shared literal", literals.left(), literals.right());
+    }
+}
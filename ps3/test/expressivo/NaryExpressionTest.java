@@ -0,0 +1,125 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for the flattened NarySum and NaryProduct expressions.
+ */
+public class NaryExpressionTest {
+
+    // Testing strategy
+    //   Builder.build()
+    //     terms added: none, one, many; constants only, variables only, both
+    //     nested NarySum/NaryProduct added or not
+    //   parse(input, FLATTENED)
+    //     chain length 1, 2, many; constants folded or not; nested parentheses
+    //     toString of the result parses back to an equal expression
+    //   equals(thatObject)
+    //     same terms, different order, different constant, binary Sum/Product of the same terms
+    //   differentiate(variable), simplify(environment), CompiledExpression.compile
+    //     result agrees with the binary form of the same input
+
+    private final Expression x = new Variable("x");
+    private final Expression y = new Variable("y");
+
+    private static final List<String> INPUTS = Arrays.asList(
+            "x", "1 + 2", "x + y + 2 + z", "2 * x * 3 * y", "x*x*x + 2*x + 1",
+            "(x + y) * (x + 1) * z", "((x + (y + 2)) + 3)", "(1 + x) * (x * 1)", "0 * x + y");
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testBuilderCollapses() {
+        assertEquals("expected constants folded", new Number(3),
+                new NarySum.Builder().add(new Number(1)).add(new Number(2)).build());
+        assertEquals("expected single term", x, new NarySum.Builder().add(x).build());
+        assertEquals("expected single factor", x, new NaryProduct.Builder().multiply(x).multiply(new Number(1)).build());
+        assertEquals("expected empty product to be one", new Number(1), new NaryProduct.Builder().build());
+    }
+
+    @Test
+    public void testBuilderFlattensNested() {
+        Expression inner = new NarySum.Builder().add(x).add(new Number(1)).build();
+        Expression outer = new NarySum.Builder().add(inner).add(y).add(new Number(2)).build();
+        assertEquals("expected flat sum", new NarySum.Builder().add(x).add(y).add(new Number(3)).build(), outer);
+        assertEquals("expected flat text", "(x + y + 3.0)", outer.toString());
+    }
+
+    @Test
+    public void testParseFlattened() {
+        Expression sum = Expression.parse("x + y + 2 + z", ParseMode.FLATTENED);
+        assertTrue("expected a NarySum", sum instanceof NarySum);
+        assertEquals("expected constant last", "(x + y + z + 2.0)", sum.toString());
+        Expression product = Expression.parse("2 * x * 3 * y", ParseMode.FLATTENED);
+        assertTrue("expected a NaryProduct", product instanceof NaryProduct);
+        assertEquals("expected coefficient first", "(6.0 * x * y)", product.toString());
+        assertEquals("expected parentheses flattened", Expression.parse("x + y + 5", ParseMode.FLATTENED),
+                Expression.parse("((x + (y + 2)) + 3)", ParseMode.FLATTENED));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (String input : INPUTS) {
+            Expression flat = Expression.parse(input, ParseMode.FLATTENED);
+            assertEquals("expected round trip of \"" + input + "\"", flat,
+                    Expression.parse(flat.toString(), ParseMode.FLATTENED));
+            assertEquals("expected equal hashcodes", flat.hashCode(),
+                    Expression.parse(flat.toString(), ParseMode.FLATTENED).hashCode());
+        }
+    }
+
+    @Test
+    public void testInequality() {
+        Expression flat = Expression.parse("x + y", ParseMode.FLATTENED);
+        assertNotEquals("expected flat and binary sums to differ", new Sum(x, y), flat);
+        assertNotEquals("expected different order to differ", Expression.parse("y + x", ParseMode.FLATTENED), flat);
+        assertNotEquals("expected different constant to differ", Expression.parse("x + y + 1", ParseMode.FLATTENED), flat);
+        assertNotEquals("expected sum and product to differ", Expression.parse("x * y", ParseMode.FLATTENED), flat);
+    }
+
+    @Test
+    public void testAgreesWithBinary() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 1.5);
+        environment.put("y", 2.5);
+        environment.put("z", 3.0);
+        for (String input : INPUTS) {
+            Expression flat = Expression.parse(input, ParseMode.FLATTENED);
+            Expression binary = Expression.parse(input, ParseMode.RECURSIVE_DESCENT);
+            String message = "expected same value for \"" + input + "\"";
+            assertEquals(message, CompiledExpression.compile(binary).evaluate(environment),
+                    CompiledExpression.compile(flat).evaluate(environment), 1e-9);
+            assertEquals(message, binary.simplify(environment), flat.simplify(environment));
+            for (String variable : Arrays.asList("x", "y", "w")) {
+                assertEquals("expected same derivative of \"" + input + "\" by " + variable,
+                        CompiledExpression.compile(binary.differentiate(variable)).evaluate(environment),
+                        CompiledExpression.compile(flat.differentiate(variable)).evaluate(environment), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testDifferentiateSkipsConstantFactors() {
+        Expression product = Expression.parse("3 * x * y", ParseMode.FLATTENED);
+        assertEquals("expected one term of the product rule", "(3.0 * y)", product.differentiate("x").toString());
+        assertEquals("expected zero", new Number(0), product.differentiate("w"));
+    }
+
+    @Test
+    public void testInternShares() {
+        ExpressionFactory factory = new ExpressionFactory();
+        Expression a = factory.intern(Expression.parse("x * y + x * y + 1", ParseMode.FLATTENED));
+        Expression b = factory.intern(Expression.parse("x * y + 1 + x * y", ParseMode.FLATTENED));
+        assertSame("expected canonical instances", a, b);
+    }
+}
@@ -0,0 +1,117 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for ParseCache.
+ */
+public class ParseCacheTest {
+
+    // Testing strategy
+    //   parse(input)
+    //     first request (miss), repeat (hit), repeat differing only in spaces (hit)
+    //     input invalid: not cached, error each time
+    //     cache full: least recently used evicted
+    //     expression large: kept by an entry-bounded cache, not kept over a node bound
+    //   normalize(input)
+    //     no spaces, leading/trailing spaces, spaces around operators,
+    //     spaces between two token characters
+    //   enable(), disable(): Expression.parse uses the cache only while enabled;
+    //     enabled with or without a node bound
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("expected unchanged", "x+1", ParseCache.normalize("x+1"));
+        assertEquals("expected spaces removed", "(x+1)*y", ParseCache.normalize("  ( x +  1 ) * y "));
+        assertEquals("expected separating space kept", "1 2", ParseCache.normalize("1   2"));
+        assertEquals("expected separating space kept", "x*2 y", ParseCache.normalize("x * 2  y"));
+    }
+
+    @Test
+    public void testHitsIgnoreSpaces() {
+        ParseCache cache = new ParseCache(8);
+        Expression first = cache.parse("x + 2 * y");
+        assertEquals("expected parsed expression", Expression.parse("x+2*y", ParseMode.ANTLR), first);
+        assertSame("expected cached instance", first, cache.parse("x + 2 * y"));
+        assertSame("expected cached instance", first, cache.parse(" x+2*y  "));
+        assertEquals("expected counters", new CacheStats(2, 1, 0), cache.stats());
+        assertEquals("expected one entry", 1, cache.size());
+    }
+
+    @Test
+    public void testInvalidNotCached() {
+        ParseCache cache = new ParseCache(8);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.parse("1  2");
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals("expected nothing cached", 0, cache.size());
+        assertEquals("expected two misses", 2, cache.stats().missCount());
+    }
+
+    @Test
+    public void testEviction() {
+        ParseCache cache = new ParseCache(2);
+        Expression x = cache.parse("x");
+        cache.parse("y");
+        cache.parse("x");
+        cache.parse("z"); // evicts y
+        assertSame("expected x kept", x, cache.parse("x"));
+        assertEquals("expected one eviction", 1, cache.stats().evictionCount());
+    }
+
+    @Test
+    public void testEnable() {
+        ParseCache cache = ParseCache.enable(4);
+        try {
+            assertSame("expected enabled cache", cache, ParseCache.enabled());
+            Expression first = Expression.parse("x * y");
+            assertSame("expected cached instance", first, Expression.parse("x*y"));
+            assertEquals("expected hit", 1, cache.stats().hitCount());
+        } finally {
+            ParseCache.disable();
+        }
+        assertNull("expected disabled", ParseCache.enabled());
+        assertNotSame("expected fresh parse", Expression.parse("x*y"), Expression.parse("x*y"));
+    }
+
+    @Test
+    public void testLargeExpressions() {
+        final StringBuilder text = new StringBuilder("x");
+        for (int i = 0; i < 1000; i++) {
+            text.append(" + x * ").append(i);
+        }
+        final String input = text.toString();
+        ParseCache byCount = new ParseCache(1);
+        assertSame("expected large expression kept", byCount.parse(input), byCount.parse(input));
+        ParseCache byNodes = new ParseCache(8, 100);
+        byNodes.parse(input);
+        assertEquals("expected large expression not kept", 0, byNodes.size());
+        byNodes.parse("x + 1");
+        assertEquals("expected small expression kept", 1, byNodes.size());
+    }
+
+    @Test
+    public void testEnableWithNodeBound() {
+        ParseCache cache = ParseCache.enable(4, 10);
+        try {
+            assertSame("expected enabled cache", cache, ParseCache.enabled());
+            Expression.parse("x * y + 1 + 2 + 3 + 4 + 5");
+            assertEquals("expected nothing kept", 0, cache.size());
+            assertSame("expected cached instance", Expression.parse("x * y"), Expression.parse("x*y"));
+        } finally {
+            ParseCache.disable();
+        }
+    }
+}
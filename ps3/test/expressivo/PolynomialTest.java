@@ -0,0 +1,142 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for Polynomial.
+ */
+public class PolynomialTest {
+
+    // Testing strategy
+    //   of(expression)
+    //     expression: Number, Variable, Sum, Product, nested, NarySum, NaryProduct
+    //     operands commuted, regrouped, distributed; repeated variables (powers)
+    //     deep chain (100000 terms)
+    //   plus, times: with zero, constants, overlapping and disjoint monomials;
+    //     large univariate operands (result far smaller than the product of term counts)
+    //   MonomialMap: expected size beyond the largest capacity
+    //   variable(name): invalid name rejected without being interned
+    //   differentiate(variable): variable present with exponent 1 or more, absent, unknown
+    //   toExpression(): zero, constant, canonical ordering; value preserved
+    //   equals, hashCode: equal polynomials from different trees, unequal coefficients
+
+    private static Polynomial of(String input) {
+        return Polynomial.of(Expression.parse(input));
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testCommutedAndRegrouped() {
+        assertEquals("expected commuted product equal", of("x * y"), of("y * x"));
+        assertEquals("expected regrouped sum equal", of("(x + y) + z"), of("x + (z + y)"));
+        assertEquals("expected equal hashcodes", of("x * y").hashCode(), of("y * x").hashCode());
+        assertTrue("expected equivalent", Polynomial.equivalent(Expression.parse("2 * x * x"),
+                Expression.parse("x * x + x * x")));
+        assertNotEquals("expected different coefficients", of("2 * x"), of("3 * x"));
+        assertNotEquals("expected different powers", of("x * x"), of("x"));
+    }
+
+    @Test
+    public void testDistributes() {
+        assertEquals("expected expanded product", of("x*x + 3*x + 2"), of("(x + 1) * (x + 2)"));
+        assertEquals("expected canonical text", "(((x * x) + (3.0 * x)) + 2.0)", of("(x + 2) * (1 + x)").toString());
+    }
+
+    @Test
+    public void testFlattenedInput() {
+        assertEquals("expected same polynomial", of("y * 2 * x + 1"),
+                Polynomial.of(Expression.parse("1 + x * y * 2", ParseMode.FLATTENED)));
+    }
+
+    @Test
+    public void testArithmetic() {
+        Polynomial x = Polynomial.variable("x");
+        Polynomial y = Polynomial.variable("y");
+        Polynomial zero = Polynomial.constant(0);
+        assertEquals("expected x + 0 = x", x, x.plus(zero));
+        assertEquals("expected x * 0 = 0", zero, x.times(zero));
+        assertEquals("expected sum", of("x + y"), x.plus(y));
+        assertEquals("expected square of sum", of("x*x + 2*x*y + y*y"), x.plus(y).times(x.plus(y)));
+        assertEquals("expected zero term count", 0, zero.termCount());
+        assertEquals("expected term count", 3, x.plus(y).times(x.plus(y)).termCount());
+    }
+
+    @Test
+    public void testDifferentiate() {
+        assertEquals("expected power rule", of("3*x*x*y + 2"), of("x*x*x*y + 2*x + y").differentiate("x"));
+        assertEquals("expected zero", Polynomial.constant(0), of("y + 1").differentiate("x"));
+        assertEquals("expected zero for unknown variable", Polynomial.constant(0), of("y").differentiate("neverUsedName"));
+        assertEquals("expected same as tree differentiation", of("(x + 1) * (x + y) * x").differentiate("x"),
+                Polynomial.of(Expression.parse("(x + 1) * (x + y) * x").differentiate("x")));
+    }
+
+    @Test
+    public void testToExpression() {
+        assertEquals("expected zero", new Number(0), Polynomial.constant(0).toExpression());
+        assertEquals("expected constant", new Number(2), of("1 + 1").toExpression());
+        assertEquals("expected variables sorted", "((2.0 * a) * b)", of("b * a * 2").toString());
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 1.5);
+        environment.put("y", 2.0);
+        Expression expression = Expression.parse("(x*x + y) * (x + y*y) * x");
+        assertEquals("expected same value", CompiledExpression.compile(expression).evaluate(environment),
+                CompiledExpression.compile(Polynomial.of(expression).toExpression()).evaluate(environment), 1e-9);
+        assertEquals("expected round trip", Polynomial.of(expression), Polynomial.of(Polynomial.of(expression).toExpression()));
+    }
+
+    @Test
+    public void testDeepChain() {
+        Expression sum = new Variable("x");
+        for (int i = 1; i < 100000; i++) {
+            sum = new Sum(sum, i % 2 == 0 ? new Variable("x") : new Product(new Number(2), new Variable("y")));
+        }
+        assertEquals("expected like terms collected", of("50000 * x + 100000 * y"), Polynomial.of(sum));
+    }
+
+    @Test
+    public void testTimesLarge() {
+        // (1 + x + ... + x^2999)^2 has 5999 terms, not 3000 * 3000
+        Polynomial x = Polynomial.variable("x");
+        Polynomial power = Polynomial.constant(1);
+        Polynomial p = Polynomial.constant(0);
+        for (int i = 0; i < 3000; i++) {
+            p = p.plus(power);
+            power = power.times(x);
+        }
+        final Polynomial square = p.times(p);
+        assertEquals("expected every power up to 5998", 5999, square.termCount());
+        assertEquals("expected value at 1", 9_000_000.0,
+                square.toExpression().evaluate(new Environment().set("x", 1)), 0);
+    }
+
+    @Test(timeout=10_000)
+    public void testMonomialMapHugeExpectedSize() {
+        // capped, so the constructor terminates instead of overflowing its capacity
+        final MonomialMap map = new MonomialMap(900_000_000);
+        map.add(MonomialMap.constant(), 1);
+        assertEquals(1, map.size());
+        assertTrue("expected capped capacity", map.capacity() <= 1 << 20);
+    }
+
+    @Test
+    public void testVariableInvalidName() {
+        for (String name : new String[] { "", "not a name", "polynomial1" }) {
+            try {
+                Polynomial.variable(name);
+                fail("expected IllegalArgumentException for " + name);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertEquals("expected not interned: " + name, -1, SymbolTable.lookup(name));
+        }
+    }
+}
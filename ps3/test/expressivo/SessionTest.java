@@ -0,0 +1,105 @@
+package expressivo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for Session.
+ */
+public class SessionTest {
+
+    // Testing strategy
+    //   run
+    //     input: expression (valid, invalid), !d/d (valid, bad syntax),
+    //            !simplify (with and without assignments, bad syntax, value out of range),
+    //            !eval (every variable assigned or not), !print
+    //     current expression: none, set by this session, passed to the constructor
+    //     output compared to the string-based Commands on the previous output
+    //   currentExpression: AST, equal to parsing the last expression output
+    //   isCommand: expression, !d/d, !simplify, !eval, !print
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testExpressionBecomesCurrent() {
+        final Session session = new Session();
+        assertFalse(session.currentExpression().isPresent());
+        assertEquals("((x * x) + y)", session.run("x*x + y"));
+        assertEquals(Optional.of(Expression.parse("x*x + y")), session.currentExpression());
+    }
+
+    @Test
+    public void testCommandsMatchStringCommands() {
+        final Session session = new Session();
+        final String input = "x*x*y + 3*x + (x + 1)*(x + 2)";
+        String text = session.run(input);
+        for (String variable : new String[] { "x", "x", "y" }) {
+            final String expected = Commands.differentiate(text, variable);
+            text = session.run("!d/d" + variable);
+            assertEquals(expected, text);
+            assertEquals(Expression.parse(text), session.currentExpression().get());
+        }
+
+        final Session other = new Session();
+        other.run(input);
+        final Map<String,Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        environment.put("y", 0.5);
+        final String derivative = other.run("!d/dx");
+        assertEquals(Commands.simplify(derivative, environment), other.run("!simplify x=2 y=0.5"));
+        assertEquals(Commands.simplify(derivative, Collections.emptyMap()), other.run("!simplify"));
+        assertEquals("simplify keeps current expression", derivative, other.currentExpression().get().toString(PrintMode.MINIMAL_PARENTHESES));
+    }
+
+    @Test
+    public void testContinuedSession() {
+        final Session session = new Session(Optional.of(Expression.parse("x * y")));
+        assertEquals("y", session.run("!d/dx"));
+        assertEquals(Optional.of(new Variable("y")), session.currentExpression());
+    }
+
+    @Test
+    public void testErrors() {
+        final Session session = new Session();
+        assertEquals("must enter an expression before using this command", session.run("!d/dx"));
+        assertTrue(session.run("x +").startsWith(IllegalArgumentException.class.getName()));
+        assertFalse(session.currentExpression().isPresent());
+
+        session.run("x");
+        assertTrue(session.run("!d/d 3").startsWith(Main.CommandSyntaxException.class.getName()));
+        assertTrue(session.run("!simplify x=").startsWith(Main.CommandSyntaxException.class.getName()));
+        assertTrue(session.run("!simplify x=-1").startsWith(Main.CommandSyntaxException.class.getName()));
+        assertTrue(session.run("!eval x=NaN").startsWith(Main.CommandSyntaxException.class.getName()));
+        assertEquals(Optional.of(new Variable("x")), session.currentExpression());
+    }
+
+    @Test
+    public void testEvalAndPrint() {
+        final Session session = new Session();
+        session.run("x * (y + 1) + 2");
+        assertEquals("x * (y + 1.0) + 2.0", session.run("!print"));
+        assertEquals("8.0", session.run("!eval x=2 y=2"));
+        assertTrue(session.run("!eval x=2").startsWith(IllegalArgumentException.class.getName()));
+        assertEquals("commands keep current expression", Optional.of(Expression.parse("x * (y + 1) + 2")),
+                session.currentExpression());
+        assertEquals("must enter an expression before using this command", new Session().run("!print"));
+    }
+
+    @Test
+    public void testIsCommand() {
+        assertTrue(Session.isCommand("!d/dx"));
+        assertTrue(Session.isCommand("!simplify x=1"));
+        assertTrue(Session.isCommand("!eval x=1"));
+        assertTrue(Session.isCommand("!print"));
+        assertFalse(Session.isCommand("x + 1"));
+    }
+}
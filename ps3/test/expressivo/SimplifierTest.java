@@ -0,0 +1,100 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for Simplifier.
+ */
+public class SimplifierTest {
+
+    // Testing strategy
+    //   simplify(expression)
+    //     expression: Number, Variable, Sum chain, Product chain, nested mix, NarySum, NaryProduct
+    //     rules: constant folding, 0 + e, 1 * e, 0 * e, like terms merged or cancelled to
+    //            a coefficient, no rule applies
+    //     expression deep (100000 terms) or shallow
+    //     result has the same value as the input
+
+    private final Expression x = new Variable("x");
+    private final Expression y = new Variable("y");
+
+    private static Expression simplify(String input) {
+        return Simplifier.simplify(Expression.parse(input));
+    }
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testLeaves() {
+        assertEquals("expected unchanged", x, Simplifier.simplify(x));
+        assertEquals("expected unchanged", new Number(2), Simplifier.simplify(new Number(2)));
+    }
+
+    @Test
+    public void testConstantFolding() {
+        assertEquals("expected a number", new Number(7), simplify("1 + 2 * 3"));
+        assertEquals("expected constants moved and folded", "((x + y) + 3.0)", simplify("1 + x + 2 + y").toString());
+        assertEquals("expected coefficient first", "((6.0 * x) * y)", simplify("2 * x * 3 * y").toString());
+    }
+
+    @Test
+    public void testIdentities() {
+        assertEquals("expected 0 + e = e", x, simplify("0 + x"));
+        assertEquals("expected e * 1 = e", x, simplify("x * 1"));
+        assertEquals("expected e * 0 = 0", new Number(0), simplify("(x + y) * 0 * x"));
+        assertEquals("expected nested identities", new Sum(x, y), simplify("(1 * x + 0 * y) + y * (0 + 1)"));
+    }
+
+    @Test
+    public void testLikeTerms() {
+        assertEquals("expected merged coefficients", "((3.0 * x) * y)", simplify("x * y + 2 * x * y").toString());
+        assertEquals("expected order of first appearance", "((2.0 * x) + y)", simplify("x + y + x").toString());
+        assertEquals("expected unchanged", new Sum(x, y), simplify("x + y"));
+    }
+
+    @Test
+    public void testFlattenedInput() {
+        Expression flat = Expression.parse("2 * x * 3 + x * 6 + 1", ParseMode.FLATTENED);
+        assertEquals("expected binary canonical form", "((12.0 * x) + 1.0)", Simplifier.simplify(flat).toString());
+    }
+
+    @Test
+    public void testSameValue() {
+        Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 1.5);
+        environment.put("y", 2.0);
+        for (String input : new String[] { "(x*x + y) * (x + y*y) * x", "x*x*x + 3*x*x + 2*x + 1", "(x + 1) * (x + 2) * 0 + y" }) {
+            Expression expression = Expression.parse(input);
+            for (Expression e : new Expression[] { expression, expression.differentiate("x") }) {
+                assertEquals("expected same value for " + e, CompiledExpression.compile(e).evaluate(environment),
+                        CompiledExpression.compile(Simplifier.simplify(e)).evaluate(environment), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testRepeatedDerivativesStaySmall() {
+        Expression expression = Expression.parse("x*x*x*x*x + 3*x*x + 2*x + 1");
+        for (int i = 0; i < 5; i++) {
+            expression = Simplifier.simplify(expression.differentiate("x"));
+        }
+        assertEquals("expected fifth derivative", new Number(120), expression);
+    }
+
+    @Test
+    public void testDeepChain() {
+        Expression sum = x;
+        for (int i = 1; i < 100000; i++) {
+            sum = new Sum(sum, i % 2 == 0 ? x : new Product(new Number(2), y));
+        }
+        assertEquals("expected like terms collected", "((50000.0 * x) + (100000.0 * y))", Simplifier.simplify(sum).toString());
+    }
+}
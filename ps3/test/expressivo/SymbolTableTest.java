@@ -0,0 +1,168 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for SymbolTable and the ids it gives variables.
+ */
+public class SymbolTableTest {
+
+    // Testing strategy
+    //   intern: new name, name seen before, equal names from distinct Strings;
+    //           many names, so the table grows; concurrent callers racing on the same names
+    //   lookup: interned name, never-seen name (no id assigned)
+    //   name: valid id, invalid id
+    //   isName: empty, letters, non-letters
+    //   Variable: equal names give equal ids and the canonical name; equals and hashCode;
+    //     invalid name rejected without being interned
+    //   differentiate by a never-seen variable; deep expression differentiated by id
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testInternStable() {
+        final int id = SymbolTable.intern("symbolTableX");
+        assertEquals(id, SymbolTable.intern("symbolTableX"));
+        assertEquals(id, SymbolTable.intern(new String("symbolTableX")));
+        assertEquals(id, SymbolTable.lookup("symbolTableX"));
+        assertEquals("symbolTableX", SymbolTable.name(id));
+        assertTrue(id < SymbolTable.size());
+    }
+
+    @Test
+    public void testInternDistinct() {
+        final int a = SymbolTable.intern("symbolTableA");
+        final int b = SymbolTable.intern("symbolTableB");
+        assertNotEquals(a, b);
+        assertEquals("symbolTableA", SymbolTable.name(a));
+        assertEquals("symbolTableB", SymbolTable.name(b));
+    }
+
+    @Test
+    public void testInternMany() {
+        final Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add(SymbolTable.intern("symbolTableMany" + letters(i)));
+        }
+        assertEquals(500, ids.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals("symbolTableMany" + letters(i),
+                    SymbolTable.name(SymbolTable.lookup("symbolTableMany" + letters(i))));
+        }
+    }
+
+    @Test
+    public void testLookupNeverSeen() {
+        final int size = SymbolTable.size();
+        assertEquals(-1, SymbolTable.lookup("symbolTableNeverInterned"));
+        assertEquals(size, SymbolTable.size());
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testNameInvalidId() {
+        SymbolTable.name(SymbolTable.size());
+    }
+
+    @Test
+    public void testIsName() {
+        assertTrue(SymbolTable.isName("x"));
+        assertTrue(SymbolTable.isName("FooBar"));
+        assertFalse(SymbolTable.isName(""));
+        assertFalse(SymbolTable.isName("x1"));
+        assertFalse(SymbolTable.isName("x y"));
+    }
+
+    @Test
+    public void testConcurrentIntern() throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(pool.submit(() -> {
+                    final List<Integer> ids = new ArrayList<>();
+                    for (int i = 0; i < 200; i++) {
+                        ids.add(SymbolTable.intern("symbolTableRace" + letters(i)));
+                    }
+                    return ids;
+                }));
+            }
+            final List<Integer> first = results.get(0).get();
+            for (Future<List<Integer>> result : results) {
+                assertEquals(first, result.get());
+            }
+            assertEquals(200, new HashSet<>(first).size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testVariableIds() {
+        final Variable x = new Variable(new String("x"));
+        final Variable alsoX = new Variable("x");
+        final Variable y = new Variable("y");
+        assertEquals(x.id(), alsoX.id());
+        assertSame(x.name(), alsoX.name());
+        assertEquals(x, alsoX);
+        assertEquals(x.hashCode(), alsoX.hashCode());
+        assertNotEquals(x, y);
+        assertEquals(x, new Variable(x.id()));
+    }
+
+    @Test
+    public void testVariableInvalidName() {
+        for (String name : new String[] { "", "not a name", "x1", "symbolTable_" }) {
+            try {
+                new Variable(name);
+                fail("expected IllegalArgumentException for " + name);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertEquals("expected not interned: " + name, -1, SymbolTable.lookup(name));
+        }
+    }
+
+    @Test
+    public void testDifferentiateNeverSeen() {
+        final Expression e = Expression.parse("x * y + 3");
+        final Environment environment = new Environment().set("x", 2).set("y", 3);
+        assertEquals(0.0, e.differentiate("symbolTableAbsent").evaluate(environment), 0);
+        assertEquals(-1, SymbolTable.lookup("symbolTableAbsent"));
+    }
+
+    @Test
+    public void testDifferentiateDeep() {
+        final Variable x = new Variable("x");
+        final Variable y = new Variable("y");
+        Expression e = x;
+        for (int i = 1; i < 100_001; i++) {
+            e = new Sum(e, i % 2 == 0 ? x : y);
+        }
+        final Environment environment = new Environment().set("x", 1).set("y", 1);
+        assertEquals(50_001.0, e.differentiate("x").evaluate(environment), 0);
+        assertEquals(50_000.0, e.differentiate("y").evaluate(environment), 0);
+    }
+
+    /** @return a distinct nonempty string of letters for each nonnegative i */
+    private static String letters(int i) {
+        final StringBuilder s = new StringBuilder();
+        do {
+            s.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return s.toString();
+    }
+}